@@ -0,0 +1,309 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-classed pool of direct (off-heap) byte buffers for per-screenshot payloads
+ * such as encoded PNGs and file contents.
+ *
+ * Screenshots almost always have the framebuffer's size, so buffers are rounded up
+ * to 1 MiB classes and the same class is hit job after job instead of allocating
+ * multi-megabyte arrays. Leases are reference counted because some consumers (the
+ * X11 owner, INCR transfers) keep a payload after the job that produced it is done.
+ * Free buffers are dropped after {@link #IDLE_TIMEOUT_MS} without use, when the
+ * framebuffer size changes, or when {@link #MAX_RETAINED_BYTES} would be exceeded.
+ *
+ * Pixel snapshots ({@link Pixels}) are pooled the same way, as heap {@code int[]}s of
+ * exactly the frame's size: a {@link BufferedImage} can only wrap an array, but reusing it
+ * still spares a humongous allocation per screenshot.
+ */
+final class BufferPool {
+
+    static final BufferPool INSTANCE = new BufferPool();
+
+    private static final int MIN_CLASS = 64 * 1024;
+    private static final int GRANULE = 1024 * 1024;
+    private static final int MAX_PER_CLASS = 2;
+    private static final long MAX_RETAINED_BYTES = 128L * 1024 * 1024;
+    private static final long IDLE_TIMEOUT_MS = 60_000;
+
+    private record Free(ByteBuffer buffer, long releasedAt) {}
+    private record FreePixels(int[] array, long releasedAt) {}
+
+    /** {@link BufferedImage} property that links a pooled snapshot image to its {@link Pixels}. */
+    private static final String PIXELS_PROPERTY = "screenshottoclipboard.pixels";
+    private static final DirectColorModel RGB = new DirectColorModel(24, 0x00FF0000, 0x0000FF00, 0x000000FF);
+
+    /** Free buffers by class size. Guarded by {@code this}. */
+    private final Map<Integer, ArrayDeque<Free>> free = new TreeMap<>();
+    /** Free pixel arrays, most recently released last. Guarded by {@code this}. */
+    private final ArrayDeque<FreePixels> freePixels = new ArrayDeque<>();
+    private long retainedBytes;
+    private long framebufferKey;
+    private boolean trimScheduled;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final Executor idleTrimmer = CompletableFuture.delayedExecutor(IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+    private BufferPool() {}
+
+    /** A pooled buffer; {@link #buffer()} has position 0 and limit {@code size}. */
+    final class Lease implements AutoCloseable {
+        private final ByteBuffer backing;
+        private final ByteBuffer buffer;
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        private Lease(ByteBuffer backing, int size) {
+            this.backing = backing;
+            this.buffer = backing.clear().slice(0, size);
+        }
+
+        ByteBuffer buffer() {
+            return buffer;
+        }
+
+        int size() {
+            return buffer.capacity();
+        }
+
+        /** Adds a reference; each {@code retain()} needs a matching {@link #close()}. */
+        Lease retain() {
+            if (refs.getAndIncrement() <= 0) throw new IllegalStateException("Lease already released");
+            return this;
+        }
+
+        /** Drops a reference; the buffer goes back to the pool with the last one. */
+        @Override
+        public void close() {
+            int left = refs.decrementAndGet();
+            if (left == 0) release(backing);
+            else if (left < 0) throw new IllegalStateException("Lease released twice");
+        }
+    }
+
+    /**
+     * A pooled pixel snapshot: a TYPE_INT_RGB {@link #image()} over a reused {@code int[]}.
+     * Reference counted like {@link Lease}; the array is reused only after the last
+     * {@link #close()}, so everything that keeps the image must hold a reference.
+     */
+    final class Pixels implements AutoCloseable {
+        private final int[] array;
+        private final BufferedImage image;
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        private Pixels(int[] array, int width, int height) {
+            this.array = array;
+            WritableRaster raster = Raster.createPackedRaster(
+                    new DataBufferInt(array, array.length), width, height, width, RGB.getMasks(), null);
+            Hashtable<String, Object> properties = new Hashtable<>();
+            properties.put(PIXELS_PROPERTY, this);
+            this.image = new BufferedImage(RGB, raster, false, properties);
+        }
+
+        /** Row-major {@code 0xRRGGBB} pixels backing {@link #image()}. */
+        int[] array() {
+            return array;
+        }
+
+        BufferedImage image() {
+            return image;
+        }
+
+        /** Adds a reference; each {@code retain()} needs a matching {@link #close()}. */
+        Pixels retain() {
+            if (refs.getAndIncrement() <= 0) throw new IllegalStateException("Pixels already released");
+            return this;
+        }
+
+        /** Drops a reference; the array goes back to the pool with the last one. */
+        @Override
+        public void close() {
+            int left = refs.decrementAndGet();
+            if (left == 0) releasePixels(array);
+            else if (left < 0) throw new IllegalStateException("Pixels released twice");
+        }
+    }
+
+    /** The pooled snapshot behind {@code image}, or {@code null} if it is an ordinary image. */
+    static Pixels pixelsOf(BufferedImage image) {
+        return image != null && image.getProperty(PIXELS_PROPERTY) instanceof Pixels pixels ? pixels : null;
+    }
+
+    /** A {@code width} x {@code height} snapshot with undefined contents. */
+    Pixels acquirePixels(int width, int height) {
+        int length = Math.multiplyExact(width, height);
+        int[] array = null;
+        synchronized (this) {
+            for (Iterator<FreePixels> it = freePixels.descendingIterator(); it.hasNext(); ) {
+                FreePixels f = it.next();
+                if (f.array().length != length) continue;
+                it.remove();
+                retainedBytes -= 4L * length;
+                array = f.array();
+                break;
+            }
+        }
+        if (array != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            array = new int[length];
+        }
+        return new Pixels(array, width, height);
+    }
+
+    Lease acquire(int size) {
+        int cls = classSize(size);
+        ByteBuffer buf = null;
+        synchronized (this) {
+            ArrayDeque<Free> q = free.get(cls);
+            Free f = q != null ? q.pollLast() : null;
+            if (f != null) {
+                buf = f.buffer();
+                retainedBytes -= cls;
+            }
+        }
+        if (buf != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            buf = ByteBuffer.allocateDirect(cls);
+        }
+        return new Lease(buf, size);
+    }
+
+    /** Reads the whole file into a pooled buffer. */
+    Lease readFile(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("File too large: " + path);
+            Lease lease = acquire((int) size);
+            try {
+                ByteBuffer dst = lease.buffer().duplicate();
+                while (dst.hasRemaining()) {
+                    if (ch.read(dst) < 0) throw new IOException("File shrank while reading: " + path);
+                }
+                return lease;
+            } catch (IOException | RuntimeException e) {
+                lease.close();
+                throw e;
+            }
+        }
+    }
+
+    /** Drops every free buffer when the framebuffer size differs from the last call. */
+    void onFramebufferSize(int width, int height) {
+        long key = (long) width << 32 | (height & 0xFFFFFFFFL);
+        synchronized (this) {
+            if (key == framebufferKey) return;
+            boolean resized = framebufferKey != 0;
+            framebufferKey = key;
+            if (!resized) return;
+        }
+        trim(0);
+    }
+
+    long hits() { return hits.get(); }
+    long misses() { return misses.get(); }
+    synchronized long retainedBytes() { return retainedBytes; }
+
+    void resetCounters() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    // ------------------------------------------------------------------
+    // Internals
+    // ------------------------------------------------------------------
+
+    static int classSize(int size) {
+        if (size <= MIN_CLASS) return MIN_CLASS;
+        if (size < GRANULE) return Integer.highestOneBit(size - 1) << 1;
+        long rounded = ((long) size + GRANULE - 1) / GRANULE * GRANULE;
+        return (int) Math.min(Integer.MAX_VALUE, rounded);
+    }
+
+    private void release(ByteBuffer buf) {
+        int cls = buf.capacity();
+        boolean schedule = false;
+        synchronized (this) {
+            ArrayDeque<Free> q = free.computeIfAbsent(cls, k -> new ArrayDeque<>());
+            // Over budget: the buffer is simply dropped and freed by its cleaner.
+            if (q.size() >= MAX_PER_CLASS || retainedBytes + cls > MAX_RETAINED_BYTES) return;
+            q.addLast(new Free(buf, System.nanoTime()));
+            retainedBytes += cls;
+            if (!trimScheduled) {
+                trimScheduled = true;
+                schedule = true;
+            }
+        }
+        if (schedule) idleTrimmer.execute(this::trimIdle);
+    }
+
+    private void releasePixels(int[] array) {
+        long bytes = 4L * array.length;
+        boolean schedule = false;
+        synchronized (this) {
+            if (freePixels.size() >= MAX_PER_CLASS || retainedBytes + bytes > MAX_RETAINED_BYTES) return;
+            freePixels.addLast(new FreePixels(array, System.nanoTime()));
+            retainedBytes += bytes;
+            if (!trimScheduled) {
+                trimScheduled = true;
+                schedule = true;
+            }
+        }
+        if (schedule) idleTrimmer.execute(this::trimIdle);
+    }
+
+    private void trimIdle() {
+        synchronized (this) {
+            trimScheduled = false;
+        }
+        trim(TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MS));
+        boolean again;
+        synchronized (this) {
+            again = retainedBytes > 0 && !trimScheduled;
+            if (again) trimScheduled = true;
+        }
+        if (again) idleTrimmer.execute(this::trimIdle);
+    }
+
+    /** Drops free buffers that have been idle for at least {@code idleNanos}. */
+    private synchronized void trim(long idleNanos) {
+        long now = System.nanoTime();
+        for (Iterator<ArrayDeque<Free>> it = free.values().iterator(); it.hasNext(); ) {
+            ArrayDeque<Free> q = it.next();
+            q.removeIf(f -> {
+                if (now - f.releasedAt() < idleNanos) return false;
+                retainedBytes -= f.buffer().capacity();
+                return true;
+            });
+            if (q.isEmpty()) it.remove();
+        }
+        freePixels.removeIf(f -> {
+            if (now - f.releasedAt() < idleNanos) return false;
+            retainedBytes -= 4L * f.array().length;
+            return true;
+        });
+    }
+}
@@ -0,0 +1,33 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cooperative cancellation for one clipboard job. {@link ClipboardUtil} checks it
+ * between stages (file wait, decode, convert, backend) and throws
+ * {@link CancellationException} once it has been cancelled.
+ */
+public final class CancellationSignal {
+
+    private final CompletableFuture<Void> cancelled = new CompletableFuture<>();
+
+    public void cancel() {
+        cancelled.complete(null);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.isDone();
+    }
+
+    /** Completes when {@link #cancel()} is called; lets waits wake up early. */
+    CompletableFuture<Void> future() {
+        return cancelled;
+    }
+
+    static void checkpoint(CancellationSignal signal) {
+        if (signal != null && signal.isCancelled()) {
+            throw new CancellationException("Superseded by a newer screenshot");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import com.mojang.brigadier.Command;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import net.fabricmc.fabric.api.client.command.v2.ClientCommandRegistrationCallback;
+import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.text.Text;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static net.fabricmc.fabric.api.client.command.v2.ClientCommandManager.argument;
+import static net.fabricmc.fabric.api.client.command.v2.ClientCommandManager.literal;
+
+/**
+ * Client-side {@code /sstoclip} command.
+ *
+ * <ul>
+ *   <li>{@code /sstoclip stats} – per-stage latency percentiles of clipboard jobs</li>
+ *   <li>{@code /sstoclip stats dump} – write them to {@code screenshottoclipboard-stats.json}</li>
+ *   <li>{@code /sstoclip stats reset} – clear the histograms</li>
+ *   <li>{@code /sstoclip history} – list the screenshots kept in memory, newest first</li>
+ *   <li>{@code /sstoclip recopy [k]} – copy history entry {@code k} (default 1) again, without disk I/O</li>
+ * </ul>
+ */
+final class ClientCommands {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("ScreenshotToClipboard");
+
+    private ClientCommands() {}
+
+    static void register() {
+        ClientCommandRegistrationCallback.EVENT.register((dispatcher, registryAccess) -> dispatcher.register(
+                literal("sstoclip")
+                        .then(literal("stats")
+                                .executes(ctx -> showStats(ctx.getSource()))
+                                .then(literal("dump").executes(ctx -> dumpStats(ctx.getSource())))
+                                .then(literal("reset").executes(ctx -> {
+                                    PipelineMetrics.reset();
+                                    ctx.getSource().sendFeedback(
+                                            Text.translatable("screenshottoclipboard.command.stats.reset"));
+                                    return Command.SINGLE_SUCCESS;
+                                })))
+                        .then(literal("history").executes(ctx -> showHistory(ctx.getSource())))
+                        .then(literal("recopy")
+                                .executes(ctx -> recopy(ctx.getSource(), 1))
+                                .then(argument("k", IntegerArgumentType.integer(1))
+                                        .executes(ctx -> recopy(ctx.getSource(),
+                                                IntegerArgumentType.getInteger(ctx, "k")))))));
+    }
+
+    private static int showStats(FabricClientCommandSource source) {
+        List<String> lines = PipelineMetrics.summaryLines();
+        if (lines.isEmpty()) {
+            source.sendFeedback(Text.translatable("screenshottoclipboard.command.stats.empty"));
+            return Command.SINGLE_SUCCESS;
+        }
+        source.sendFeedback(Text.translatable("screenshottoclipboard.command.stats.header"));
+        for (String line : lines) source.sendFeedback(Text.literal(line));
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int showHistory(FabricClientCommandSource source) {
+        List<ScreenshotHistory.Entry> entries = ScreenshotHistory.INSTANCE.entries();
+        if (entries.isEmpty()) {
+            source.sendFeedback(Text.translatable("screenshottoclipboard.command.history.empty"));
+            return Command.SINGLE_SUCCESS;
+        }
+        source.sendFeedback(Text.translatable("screenshottoclipboard.command.history.header"));
+        for (int i = 0; i < entries.size(); i++) {
+            ScreenshotHistory.Entry e = entries.get(i);
+            source.sendFeedback(Text.literal(String.format("#%d %s (%dx%d, %d KiB)",
+                    i + 1, e.name(), e.width(), e.height(), (e.size() + 1023) / 1024)));
+        }
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int recopy(FabricClientCommandSource source, int index) {
+        MinecraftClient client = source.getClient();
+        boolean queued = ScreenshotClipboardService.INSTANCE.enqueueHistory(index,
+                () -> client.execute(() -> source.sendFeedback(Text.translatable("screenshottoclipboard.message.copied"))),
+                () -> client.execute(() -> source.sendError(Text.translatable("screenshottoclipboard.message.failed"))));
+        if (!queued) {
+            source.sendError(Text.translatable("screenshottoclipboard.command.recopy.missing", index));
+            return 0;
+        }
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int dumpStats(FabricClientCommandSource source) {
+        Path path = FabricLoader.getInstance().getGameDir().resolve("screenshottoclipboard-stats.json");
+        try {
+            PipelineMetrics.dumpJson(path);
+            source.sendFeedback(Text.translatable("screenshottoclipboard.command.stats.dumped", path.toString()));
+            return Command.SINGLE_SUCCESS;
+        } catch (IOException e) {
+            LOGGER.warn("[ScreenshotToClipboard] Failed to write stats to {}", path, e);
+            source.sendError(Text.translatable("screenshottoclipboard.command.stats.dump_failed"));
+            return 0;
+        }
+    }
+}
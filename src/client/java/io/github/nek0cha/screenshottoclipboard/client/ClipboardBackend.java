@@ -0,0 +1,55 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToIntFunction;
+
+/**
+ * One way of putting a screenshot on the OS clipboard (a process, a native binding or AWT).
+ * Backends are registered with {@link ClipboardBackends}, which orders, times and trips them.
+ * {@link #copy} may finish asynchronously (external processes); the router stops waiting
+ * and cancels the future when a newer screenshot supersedes the request.
+ */
+interface ClipboardBackend {
+
+    /** Stable id, also used for metrics, logs and the warm-up probe (e.g. {@code "xclip"}). */
+    String id();
+
+    /**
+     * Routing tier for {@code request}: lower tiers are tried first and, within a tier,
+     * the fastest healthy backend wins. Negative = not applicable to this request.
+     */
+    int tier(ClipboardRequest request);
+
+    /**
+     * Completes with {@code true} once the clipboard holds the screenshot. Any use of
+     * {@code request} must happen before this returns; cancelling the future must abort
+     * the copy.
+     */
+    CompletableFuture<Boolean> copy(ClipboardRequest request) throws Exception;
+
+    @FunctionalInterface
+    interface Copier {
+        boolean copy(ClipboardRequest request) throws Exception;
+    }
+
+    @FunctionalInterface
+    interface AsyncCopier {
+        CompletableFuture<Boolean> copy(ClipboardRequest request) throws Exception;
+    }
+
+    /** A backend that finishes on the calling thread. */
+    static ClipboardBackend of(String id, ToIntFunction<ClipboardRequest> tier, Copier copier) {
+        return async(id, tier, request -> CompletableFuture.completedFuture(copier.copy(request)));
+    }
+
+    static ClipboardBackend async(String id, ToIntFunction<ClipboardRequest> tier, AsyncCopier copier) {
+        return new ClipboardBackend() {
+            @Override public String id() { return id; }
+            @Override public int tier(ClipboardRequest request) { return tier.applyAsInt(request); }
+            @Override public CompletableFuture<Boolean> copy(ClipboardRequest request) throws Exception {
+                return copier.copy(request);
+            }
+            @Override public String toString() { return id; }
+        };
+    }
+}
@@ -0,0 +1,280 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import io.github.nek0cha.screenshottoclipboard.client.PipelineMetrics.Span;
+import io.github.nek0cha.screenshottoclipboard.client.PipelineMetrics.Stage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Registry and router for {@link ClipboardBackend}s.
+ *
+ * For each request the applicable backends are ordered by tier and, within a tier, by
+ * their average latency (unmeasured ones first, so every backend gets measured). A
+ * backend that fails {@link #FAILURES_TO_TRIP} times in a row is tripped: it is skipped
+ * for a cool-down that doubles on each re-trip, then given a single trial; if every
+ * applicable backend is tripped, they are tried anyway, shortest cool-down first. Backends the
+ * warm-up probe found missing are tried last. Routes are logged at debug level and
+ * per-backend health is part of {@code /sstoclip stats}.
+ */
+final class ClipboardBackends {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("ScreenshotToClipboard");
+
+    private static final int FAILURES_TO_TRIP = 3;
+    private static final long BASE_COOL_DOWN_MS = 30_000;
+    private static final long MAX_COOL_DOWN_MS = 10 * 60_000;
+    /** Weight of the newest sample in the latency average. */
+    private static final double EWMA_ALPHA = 0.2;
+
+    private static volatile List<ClipboardBackend> backends;
+    private static final Map<String, Health> HEALTH = new ConcurrentHashMap<>();
+
+    private ClipboardBackends() {}
+
+    /** Success rate, latency and circuit-breaker state of one backend. */
+    private static final class Health {
+        long successes;
+        long failures;
+        int consecutiveFailures;
+        int trips;
+        double avgNanos = -1;
+        long trippedUntil;
+
+        synchronized boolean isTripped(long now) {
+            return trippedUntil != 0 && now < trippedUntil;
+        }
+
+        synchronized double avgNanos() {
+            return avgNanos;
+        }
+
+        synchronized long trippedUntil() {
+            return trippedUntil;
+        }
+
+        /** Returns {@code true} if the backend had been tripped before this success. */
+        synchronized boolean success(long nanos) {
+            boolean recovered = trips > 0;
+            successes++;
+            consecutiveFailures = 0;
+            trips = 0;
+            trippedUntil = 0;
+            avgNanos = avgNanos < 0 ? nanos : avgNanos + EWMA_ALPHA * (nanos - avgNanos);
+            return recovered;
+        }
+
+        /** Returns the cool-down in ms if this failure trips the backend, else 0. */
+        synchronized long failure(long now) {
+            failures++;
+            if (++consecutiveFailures < FAILURES_TO_TRIP) return 0;
+            long coolDown = Math.min(MAX_COOL_DOWN_MS, BASE_COOL_DOWN_MS << Math.min(trips, 10));
+            trips++;
+            trippedUntil = now + TimeUnit.MILLISECONDS.toNanos(coolDown);
+            return coolDown;
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Registry
+    // ------------------------------------------------------------------
+
+    /** Registered backends, initially {@link ClipboardUtil#platformBackends()}. */
+    static List<ClipboardBackend> all() {
+        List<ClipboardBackend> list = backends;
+        if (list == null) {
+            synchronized (ClipboardBackends.class) {
+                if (backends == null) backends = List.copyOf(ClipboardUtil.platformBackends());
+                list = backends;
+            }
+        }
+        return list;
+    }
+
+    /** Adds {@code backend}, replacing a registered one with the same id. */
+    static synchronized void register(ClipboardBackend backend) {
+        List<ClipboardBackend> list = new ArrayList<>(all());
+        list.removeIf(b -> b.id().equals(backend.id()));
+        list.add(backend);
+        backends = List.copyOf(list);
+    }
+
+    /** Replaces all backends (e.g. with stubs for a headless harness) and clears their health. */
+    static synchronized void replaceAll(List<ClipboardBackend> list) {
+        backends = List.copyOf(list);
+        HEALTH.clear();
+    }
+
+    // ------------------------------------------------------------------
+    // Routing
+    // ------------------------------------------------------------------
+
+    static boolean copy(ClipboardRequest request) {
+        long now = System.nanoTime();
+        List<ClipboardBackend> route = new ArrayList<>();
+        List<ClipboardBackend> unavailable = new ArrayList<>();
+        List<ClipboardBackend> tripped = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+        for (ClipboardBackend b : all()) {
+            if (b.tier(request) < 0) continue;
+            if (health(b).isTripped(now)) {
+                tripped.add(b);
+                skipped.add(b.id() + " (tripped, " + remainingSeconds(b, now) + "s left)");
+            } else if (ClipboardWarmup.isKnownUnavailable(b.id())) {
+                unavailable.add(b);
+            } else {
+                route.add(b);
+            }
+        }
+        Comparator<ClipboardBackend> order = Comparator.<ClipboardBackend>comparingInt(b -> b.tier(request))
+                .thenComparingDouble(b -> health(b).avgNanos());
+        route.sort(order);
+        // The probe ran once at start-up and may be out of date: demote, do not drop.
+        unavailable.sort(order);
+        route.addAll(unavailable);
+        if (route.isEmpty() && !tripped.isEmpty()) {
+            // Nothing else left: failing fast would lose the screenshot, so cut the cool-downs short.
+            tripped.sort(Comparator.comparingLong(b -> health(b).trippedUntil()));
+            route.addAll(tripped);
+            skipped.clear();
+            LOGGER.debug("[ScreenshotToClipboard] Every clipboard backend is tripped, trying them by remaining cool-down");
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("[ScreenshotToClipboard] Route: {}{}",
+                    route.stream().map(ClipboardBackends::describe).collect(Collectors.joining(" > ")),
+                    skipped.isEmpty() ? "" : "; skipped " + String.join(", ", skipped));
+        }
+
+        for (ClipboardBackend b : route) {
+            CancellationSignal.checkpoint(request.cancel());
+            Health health = health(b);
+            long start = System.nanoTime();
+            boolean ok;
+            Span span = PipelineMetrics.start(Stage.BACKEND, b.id());
+            try {
+                ok = span.result(await(b.copy(request), request.cancel()));
+            } catch (CancellationException e) {
+                throw e;
+            } catch (ExecutionException e) {
+                LOGGER.warn("[ScreenshotToClipboard] Clipboard backend {} failed", b.id(), e.getCause());
+                ok = span.result(false);
+            } catch (Throwable t) {
+                LOGGER.warn("[ScreenshotToClipboard] Clipboard backend {} failed", b.id(), t);
+                ok = span.result(false);
+            } finally {
+                span.close();
+            }
+            long end = System.nanoTime();
+            if (ok) {
+                if (health.success(end - start)) LOGGER.info("[ScreenshotToClipboard] Clipboard backend {} recovered", b.id());
+                if (unavailable.contains(b)) ClipboardWarmup.markWorking(b.id());
+                return true;
+            }
+            long coolDown = health.failure(end);
+            if (coolDown > 0) {
+                LOGGER.warn("[ScreenshotToClipboard] Clipboard backend {} failed {} times in a row, skipping it for {} s",
+                        b.id(), FAILURES_TO_TRIP, coolDown / 1000);
+            }
+        }
+        LOGGER.warn("[ScreenshotToClipboard] Clipboard copy failed (tried: {}{}; os={}, XDG_SESSION_TYPE={}, java.awt.headless={})",
+                route.stream().map(ClipboardBackend::id).collect(Collectors.joining(", ")),
+                skipped.isEmpty() ? "" : "; skipped " + String.join(", ", skipped),
+                System.getProperty("os.name"), System.getenv("XDG_SESSION_TYPE"),
+                System.getProperty("java.awt.headless"));
+        return false;
+    }
+
+    /**
+     * Waits for {@code result} unless {@code cancel} fires first; then the backend's future
+     * is cancelled (a process is torn down in the background) and the wait ends right away.
+     */
+    private static boolean await(CompletableFuture<Boolean> result, CancellationSignal cancel)
+            throws InterruptedException, ExecutionException {
+        if (cancel != null && !result.isDone()) {
+            CompletableFuture.anyOf(result, cancel.future()).exceptionally(t -> null).get();
+            if (!result.isDone() && cancel.isCancelled()) {
+                result.cancel(true);
+                CancellationSignal.checkpoint(cancel);
+            }
+        }
+        try {
+            return Boolean.TRUE.equals(result.get());
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            throw e;
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Reporting
+    // ------------------------------------------------------------------
+
+    /** One line per backend that has been tried: {@code backend id ok=… fail=… avg=… [tripped]}. */
+    static List<String> summaryLines() {
+        long now = System.nanoTime();
+        List<String> lines = new ArrayList<>();
+        for (ClipboardBackend b : all()) {
+            Health h = HEALTH.get(b.id());
+            if (h == null) continue;
+            synchronized (h) {
+                if (h.successes + h.failures == 0) continue;
+                lines.add(String.format("backend %s ok=%d fail=%d avg=%s%s", b.id(), h.successes, h.failures,
+                        h.avgNanos < 0 ? "-" : String.format("%.1fms", h.avgNanos / 1e6),
+                        h.isTripped(now) ? " tripped " + remainingSeconds(b, now) + "s" : ""));
+            }
+        }
+        return lines;
+    }
+
+    static JsonArray toJson() {
+        long now = System.nanoTime();
+        JsonArray array = new JsonArray();
+        for (ClipboardBackend b : all()) {
+            Health h = HEALTH.get(b.id());
+            if (h == null) continue;
+            synchronized (h) {
+                JsonObject o = new JsonObject();
+                o.addProperty("backend", b.id());
+                o.addProperty("successes", h.successes);
+                o.addProperty("failures", h.failures);
+                if (h.avgNanos >= 0) o.addProperty("avgMs", h.avgNanos / 1e6);
+                o.addProperty("tripped", h.isTripped(now));
+                array.add(o);
+            }
+        }
+        return array;
+    }
+
+    static void reset() {
+        HEALTH.clear();
+    }
+
+    private static Health health(ClipboardBackend b) {
+        return HEALTH.computeIfAbsent(b.id(), k -> new Health());
+    }
+
+    private static long remainingSeconds(ClipboardBackend b, long now) {
+        Health h = health(b);
+        synchronized (h) {
+            return Math.max(0, TimeUnit.NANOSECONDS.toSeconds(h.trippedUntil - now));
+        }
+    }
+
+    private static String describe(ClipboardBackend b) {
+        double avg = health(b).avgNanos();
+        String id = ClipboardWarmup.isKnownUnavailable(b.id()) ? b.id() + "[probe failed]" : b.id();
+        return avg < 0 ? id : String.format("%s(%.1fms)", id, avg / 1e6);
+    }
+}
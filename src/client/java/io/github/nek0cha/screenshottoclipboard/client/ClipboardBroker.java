@@ -0,0 +1,384 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional clipboard broker for several game instances on one machine ({@code clipboardBroker}).
+ *
+ * The first instance to copy a screenshot takes a lock file and hosts a UNIX domain socket
+ * in the temp directory; later instances submit their jobs to it instead of touching the OS
+ * clipboard. A job is the saved file's path or, for pixel snapshots where {@code /dev/shm}
+ * exists, the path of a shared-memory file holding the raw pixels, so no image data crosses
+ * the socket. Both sides map that file: the client stores the snapshot straight into it and
+ * the host copies it straight into a pooled pixel array. Elsewhere a snapshot is sent as its
+ * saved file, which the host reads once written. The host runs submitted jobs through its own {@link ScreenshotClipboardService}:
+ * one clipboard owner, warm backends, and latest-wins across all instances. The lock is
+ * released with the host process, so the next instance to copy takes over.
+ *
+ * Wire format (big-endian): request {@code magic, kind, onDisk, file [, pixels, width, height]},
+ * strings in {@code writeUTF} form; then one {@link #WRITTEN} byte once a file that was still
+ * being written is on disk. The host answers with one status byte and closes the connection.
+ */
+final class ClipboardBroker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("ScreenshotToClipboard");
+
+    static final ClipboardBroker INSTANCE = new ClipboardBroker();
+
+    private static final int MAGIC = 0x53544331;                 // "STC1"
+    private static final byte KIND_FILE = 1;
+    private static final byte KIND_PIXELS = 2;
+    private static final byte WRITTEN = 1;
+    private static final byte OK = 1;
+    private static final byte FAILED = 2;
+    private static final byte SUPERSEDED = 3;
+    /** Longest a submitted job may take on the host, file wait included. */
+    private static final long REPLY_TIMEOUT_MS = ClipboardUtil.FILE_WRITE_TIMEOUT_MS + 20_000;
+    private static final Path SHM = Path.of("/dev/shm");
+
+    private final Path socketPath;
+    private final Path lockPath;
+    private final ExecutorService connections = Executors.newCachedThreadPool(new java.util.concurrent.ThreadFactory() {
+        private final AtomicInteger n = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "screenshot-to-clipboard-broker-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /** Set while this instance hosts. Guarded by {@code this}. */
+    private ServerSocketChannel server;
+    private FileLock lock;
+
+    private ClipboardBroker() {
+        String user = System.getProperty("user.name", "user").replaceAll("[^A-Za-z0-9._-]", "_");
+        Path dir = Path.of(System.getProperty("java.io.tmpdir"));
+        socketPath = dir.resolve("screenshottoclipboard-" + user + ".sock");
+        lockPath = dir.resolve("screenshottoclipboard-" + user + ".lock");
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "screenshot-to-clipboard-broker-shutdown"));
+    }
+
+    // ------------------------------------------------------------------
+    // Role
+    // ------------------------------------------------------------------
+
+    /**
+     * Whether jobs go to another instance. With the broker enabled, this instance becomes
+     * the host unless another live instance already is.
+     */
+    synchronized boolean isRemote() {
+        if (!ModConfig.getInstance().clipboardBroker) {
+            stop();
+            return false;
+        }
+        if (server != null) return false;
+        try {
+            return !host();
+        } catch (IOException e) {
+            LOGGER.warn("[ScreenshotToClipboard] Cannot host the clipboard broker at {}, copying directly", socketPath, e);
+            return false;
+        }
+    }
+
+    /** Takes the host lock and binds the socket; {@code false} if another instance holds the lock. */
+    private boolean host() throws IOException {
+        FileChannel lockFile = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock held;
+        try {
+            held = lockFile.tryLock();
+        } catch (IOException | RuntimeException e) {
+            lockFile.close();
+            throw e;
+        }
+        if (held == null) {
+            lockFile.close();
+            return false;
+        }
+        ServerSocketChannel channel = null;
+        try {
+            Files.deleteIfExists(socketPath);                     // left behind by a host that died
+            channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.bind(UnixDomainSocketAddress.of(socketPath));
+            try {
+                Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException ignored) {
+                // Not a POSIX file system (Windows): the per-user temp directory already restricts access.
+            }
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) channel.close();
+            lockFile.close();
+            throw e;
+        }
+        server = channel;
+        lock = held;
+        ServerSocketChannel accepting = channel;
+        connections.execute(() -> accept(accepting));
+        LOGGER.info("[ScreenshotToClipboard] Hosting the clipboard broker at {}", socketPath);
+        return true;
+    }
+
+    /** Stops hosting (if this instance hosts); submitted jobs that are still running finish normally. */
+    synchronized void stop() {
+        if (server == null) return;
+        try {
+            server.close();
+            Files.deleteIfExists(socketPath);
+            lock.channel().close();
+        } catch (IOException e) {
+            LOGGER.debug("[ScreenshotToClipboard] Failed to stop the clipboard broker", e);
+        }
+        server = null;
+        lock = null;
+    }
+
+    // ------------------------------------------------------------------
+    // Host
+    // ------------------------------------------------------------------
+
+    private void accept(ServerSocketChannel channel) {
+        while (true) {
+            SocketChannel client;
+            try {
+                client = channel.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                LOGGER.warn("[ScreenshotToClipboard] Clipboard broker stopped accepting", e);
+                return;
+            }
+            connections.execute(() -> serve(client));
+        }
+    }
+
+    /**
+     * Runs one submitted job. The status is written (and the connection closed) from the job's
+     * callback; this thread meanwhile waits for the client's {@link #WRITTEN} signal.
+     */
+    private void serve(SocketChannel channel) {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+        try {
+            if (in.readInt() != MAGIC) throw new IOException("Not a clipboard broker request");
+            byte kind = in.readByte();
+            boolean onDisk = in.readBoolean();
+            File file = new File(in.readUTF());
+            BufferedImage pixels = null;
+            if (kind == KIND_PIXELS) {
+                Path shared = Path.of(in.readUTF());
+                pixels = readPixels(shared, in.readInt(), in.readInt());
+            }
+            if (onDisk) written.complete(null);
+            LOGGER.debug("[ScreenshotToClipboard] Clipboard broker job: {}", file);
+            ScreenshotClipboardService.INSTANCE.enqueueRemote(file, pixels, written,
+                    () -> reply(channel, OK), () -> reply(channel, FAILED), () -> reply(channel, SUPERSEDED));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("[ScreenshotToClipboard] Bad clipboard broker request", e);
+            reply(channel, FAILED);
+            return;
+        }
+        try {
+            if (!written.isDone() && in.read() == WRITTEN) written.complete(null);
+        } catch (IOException ignored) {
+            // Closed by the reply, or the client went away.
+        }
+        written.completeExceptionally(new EOFException("Client disconnected before the screenshot was written"));
+    }
+
+    private static void reply(SocketChannel channel, byte status) {
+        try (channel) {
+            channel.write(ByteBuffer.wrap(new byte[] {status}));
+        } catch (IOException e) {
+            LOGGER.debug("[ScreenshotToClipboard] Clipboard broker client went away", e);
+        }
+    }
+
+    /**
+     * Copies the client's raw native-order {@code 0x??RRGGBB} pixels from the mapped file into a
+     * pooled TYPE_INT_RGB image; the job releases it like a local snapshot.
+     */
+    private static BufferedImage readPixels(Path shared, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0 || !ScreenshotClipboardService.shouldSnapshot(width, height)) {
+            throw new IOException("Bad pixel buffer size: " + width + "x" + height);
+        }
+        BufferPool.Pixels pixels = BufferPool.INSTANCE.acquirePixels(width, height);
+        try (FileChannel ch = FileChannel.open(shared, StandardOpenOption.READ)) {
+            int[] data = pixels.array();
+            if (ch.size() != 4L * data.length) throw new IOException("Pixel buffer has the wrong size: " + shared);
+            ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()).order(ByteOrder.nativeOrder()).asIntBuffer().get(data);
+            return pixels.image();
+        } catch (IOException | RuntimeException e) {
+            pixels.close();
+            throw e;
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Client
+    // ------------------------------------------------------------------
+
+    /**
+     * Runs a job on the hosting instance and returns its result. Throws {@link IOException}
+     * if the host cannot be reached or goes away (the caller then copies directly), and
+     * {@link CancellationException} if the job is superseded, here or on the host.
+     */
+    boolean submit(File file, BufferedImage pixels, Future<?> written, CancellationSignal cancel) throws IOException {
+        CancellationSignal.checkpoint(cancel);
+        Path shared = null;
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            // Connect first: with no host to take them, the pixels are never copied.
+            if (pixels != null) shared = writePixels(pixels);
+            boolean onDisk = written == null || written.isDone();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeByte(shared != null ? KIND_PIXELS : KIND_FILE);
+            out.writeBoolean(onDisk);
+            out.writeUTF(file.getAbsolutePath());
+            if (shared != null) {
+                out.writeUTF(shared.toString());
+                out.writeInt(pixels.getWidth());
+                out.writeInt(pixels.getHeight());
+            }
+            writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+            if (!onDisk) {
+                toCompletable(written).thenRun(() -> {
+                    try {
+                        writeFully(channel, ByteBuffer.wrap(new byte[] {WRITTEN}));
+                    } catch (IOException ignored) {
+                        // The job already ended.
+                    }
+                });
+            }
+
+            AtomicBoolean timedOut = new AtomicBoolean();
+            if (cancel != null) cancel.future().thenRun(() -> closeQuietly(channel));
+            CompletableFuture.delayedExecutor(REPLY_TIMEOUT_MS, TimeUnit.MILLISECONDS).execute(() -> {
+                if (channel.isOpen()) {
+                    timedOut.set(true);
+                    closeQuietly(channel);
+                }
+            });
+            ByteBuffer reply = ByteBuffer.allocate(1);
+            try {
+                while (reply.hasRemaining()) {
+                    if (channel.read(reply) < 0) throw new EOFException("Clipboard broker closed the connection");
+                }
+            } catch (AsynchronousCloseException e) {
+                CancellationSignal.checkpoint(cancel);
+                if (!timedOut.get()) throw e;
+                LOGGER.warn("[ScreenshotToClipboard] Clipboard broker did not answer within {} ms", REPLY_TIMEOUT_MS);
+                return false;
+            }
+            return switch (reply.get(0)) {
+                case OK -> true;
+                case SUPERSEDED -> throw new CancellationException("Superseded on the clipboard broker");
+                default -> false;
+            };
+        } finally {
+            if (shared != null) Files.deleteIfExists(shared);
+        }
+    }
+
+    /**
+     * Stores the pixels, as native-order ints, into a mapped shared-memory file for the host.
+     * Returns {@code null} where the OS has no {@code /dev/shm}: a disk temp file would cost as
+     * much I/O as the saved file itself. The mapping is dropped with the buffer; the pages go
+     * once the file is deleted and the buffer collected.
+     */
+    private static Path writePixels(BufferedImage image) throws IOException {
+        if (!Files.isDirectory(SHM) || !Files.isWritable(SHM)) return null;
+        int width = image.getWidth(), height = image.getHeight();
+        Path file = Files.createTempFile(SHM, "screenshottoclipboard-", ".pixels");
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            IntBuffer shared = ch.map(FileChannel.MapMode.READ_WRITE, 0, 4L * width * height)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+            int[] packed = packedPixels(image);
+            if (packed != null) {
+                shared.put(packed, 0, width * height);
+            } else {
+                int[] row = new int[width];
+                for (int y = 0; y < height; y++) shared.put(image.getRGB(0, y, width, 1, row, 0, width));
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    /** The backing array of an unpadded {@code 0x??RRGGBB} image (e.g. the screenshot snapshot), else {@code null}. */
+    private static int[] packedPixels(BufferedImage image) {
+        int type = image.getType();
+        Raster raster = image.getRaster();
+        if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && raster.getDataBuffer() instanceof DataBufferInt dbi
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sp
+                && dbi.getOffset() == 0 && sp.getScanlineStride() == image.getWidth()
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0) {
+            return dbi.getData();
+        }
+        return null;
+    }
+
+    private static CompletableFuture<?> toCompletable(Future<?> future) {
+        if (future instanceof CompletableFuture<?> cf) return cf;
+        return CompletableFuture.runAsync(() -> {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted");
+            } catch (ExecutionException e) {
+                throw new CancellationException("Screenshot was not written");
+            }
+        });
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) channel.write(buf);
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try { channel.close(); } catch (IOException ignored) {}
+    }
+}
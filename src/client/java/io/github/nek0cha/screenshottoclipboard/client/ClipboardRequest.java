@@ -0,0 +1,269 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * One screenshot on its way through the backends. Representations (the written file,
+ * encoded PNG bytes, decoded pixels, the AWT selection) are produced on first use and
+ * shared, so a fallback backend never redoes the work of the one before it.
+ * Used from a single thread; {@link #close()} releases the pooled PNG and deletes the
+ * temporary file that path-based backends may have needed.
+ */
+final class ClipboardRequest implements AutoCloseable {
+
+    private final BufferedImage image;
+    private final Path pngPath;
+    private final Future<?> written;
+    private final CancellationSignal cancel;
+    private final boolean streaming;
+    private final boolean fromHistory;
+    private final boolean fileReference;
+
+    private Boolean fileReady;
+    private Path tempFile;
+    private long contentKey;
+    private BooleanSupplier ownership;
+    private BufferPool.Lease png;
+    /** The saved file's bytes: its {@link PngTee} capture or the file read back. */
+    private BufferPool.Lease saved;
+    private BufferedImage decoded;
+    private LazyImageSelection selection;
+
+    /**
+     * @param image     in-memory pixels, or {@code null} for file-only jobs
+     * @param pngPath   saved screenshot, or {@code null} if there is none
+     * @param written   completed once {@code pngPath} is on disk, or {@code null} if it already is
+     * @param streaming {@code pngPath} is too large to decode into the heap
+     */
+    ClipboardRequest(BufferedImage image, Path pngPath, Future<?> written, CancellationSignal cancel,
+                     boolean streaming) {
+        this(image, pngPath, written, cancel, streaming, false);
+    }
+
+    private ClipboardRequest(BufferedImage image, Path pngPath, Future<?> written, CancellationSignal cancel,
+                             boolean streaming, boolean fileReference) {
+        this.image = image;
+        this.pngPath = pngPath;
+        this.written = written;
+        this.cancel = cancel;
+        this.streaming = streaming;
+        this.fromHistory = false;
+        this.fileReference = fileReference;
+    }
+
+    /** Publishes a reference to {@code pngPath} (file list / uri-list) instead of its pixels. */
+    static ClipboardRequest fileReference(Path pngPath, Future<?> written, CancellationSignal cancel) {
+        return new ClipboardRequest(null, pngPath, written, cancel, true, true);
+    }
+
+    /** Re-copies a {@link ScreenshotHistory} entry; the PNG is the only representation to start from. */
+    ClipboardRequest(ScreenshotHistory.Entry entry, CancellationSignal cancel) {
+        this.image = null;
+        this.pngPath = null;
+        this.written = null;
+        this.cancel = cancel;
+        this.streaming = !ScreenshotClipboardService.shouldSnapshot(entry.width(), entry.height());
+        this.fromHistory = true;
+        this.fileReference = false;
+        ByteBuffer src = entry.png();
+        png = BufferPool.INSTANCE.acquire(src.remaining());
+        png.buffer().duplicate().put(src);
+    }
+
+    /** In-memory pixels, or {@code null} for file-only jobs. */
+    BufferedImage image() {
+        return image;
+    }
+
+    boolean streaming() {
+        return streaming;
+    }
+
+    CancellationSignal cancel() {
+        return cancel;
+    }
+
+    boolean fromHistory() {
+        return fromHistory;
+    }
+
+    /** {@link ContentHash}-based key of what is being copied, or 0 if it was not hashed. */
+    long contentKey() {
+        return contentKey;
+    }
+
+    void contentKey(long key) {
+        contentKey = key;
+    }
+
+    /**
+     * Called by a backend once the screenshot is on the clipboard, if it can tell later
+     * whether the clipboard still holds it (e.g. no other application has copied since).
+     */
+    void published(BooleanSupplier stillOwned) {
+        ownership = stillOwned;
+    }
+
+    /** What the successful backend passed to {@link #published}, or {@code null}. */
+    BooleanSupplier ownership() {
+        return ownership;
+    }
+
+    /** Backends must publish {@link #file()} as a file reference and never read its pixels. */
+    boolean fileReference() {
+        return fileReference;
+    }
+
+    /**
+     * The saved screenshot of exactly what is being copied, without waiting for it to be
+     * written; {@code null} for history entries and file references.
+     */
+    Path savedPath() {
+        return fromHistory || fileReference ? null : pngPath;
+    }
+
+    /** Completed once {@link #savedPath()} is on disk, or {@code null} if it already is. */
+    Future<?> written() {
+        return written;
+    }
+
+    /**
+     * The PNG if {@link #png()} has already produced it or the saved file is already in
+     * memory, otherwise {@code null}.
+     */
+    BufferPool.Lease encodedPng() {
+        return png != null ? png : saved;
+    }
+
+    /**
+     * The saved PNG once it is completely written, or {@code null} if it is not available.
+     * History entries are written to a temporary file on first use.
+     */
+    Path file() {
+        if (fromHistory) {
+            if (tempFile == null) tempFile = ClipboardUtil.writeTempPng(png.buffer());
+            return tempFile;
+        }
+        if (pngPath == null) return null;
+        if (fileReady == null) {
+            fileReady = written == null || ClipboardUtil.awaitPng(pngPath, written, cancel);
+        }
+        return fileReady ? pngPath : null;
+    }
+
+    /**
+     * The saved PNG if it is already in memory ({@link PngTee} captured it while Minecraft
+     * wrote {@link #file()}, or {@link #savedPng()} read it), otherwise {@code null}.
+     * For in-memory jobs only if the write has already finished; they never wait for it.
+     */
+    BufferPool.Lease teedPng() {
+        if (saved == null && pngPath != null && !fromHistory && !fileReference
+                && (image == null ? file() != null : written != null && written.isDone())) {
+            saved = PngTee.take(pngPath);
+        }
+        return saved;
+    }
+
+    /**
+     * The saved PNG's bytes, waiting for the write: {@link #teedPng()}, or {@link #file()} read
+     * into a pooled buffer. Kept until {@link #close()}; unlike {@link #png()} never re-encoded.
+     */
+    BufferPool.Lease savedPng() throws IOException {
+        if (teedPng() == null) {
+            Path file = file();
+            if (file == null) throw new IOException("Screenshot file not available: " + pngPath);
+            saved = BufferPool.INSTANCE.readFile(file);
+        }
+        return saved;
+    }
+
+    /** Whether {@link #png()} is re-encoded from the pixels as a palette PNG ({@code paletteColors}). */
+    boolean quantizes() {
+        return PaletteQuantizer.isEnabled() && !fromHistory && !fileReference && !streaming;
+    }
+
+    /**
+     * PNG bytes: captured by {@link PngTee}, read from {@link #file()} when it is already
+     * written, otherwise encoded from {@link #image()}. In palette mode they are encoded from
+     * {@link #pixels()} (truecolor if the palette is too coarse). Owned by this request.
+     */
+    BufferPool.Lease png() throws IOException {
+        if (png == null && quantizes()) {
+            BufferedImage source = pixels();
+            if (source != null) png = ClipboardUtil.encodePngPooled(source, this::savedPngSize);
+        }
+        if (png == null) {
+            if (teedPng() == null && image != null && (pngPath == null || written != null)) {
+                png = ClipboardUtil.encodePngPooled(image, () -> -1);
+            } else {
+                png = savedPng().retain();
+            }
+        }
+        return png;
+    }
+
+    /**
+     * {@link #png()} as a file for path-based backends: {@link #file()}, or a temporary file in
+     * palette mode and for pixels without a saved file (downscaled copies).
+     */
+    Path pngFile() throws IOException {
+        if (!quantizes() && (pngPath != null || image == null)) return file();
+        if (tempFile == null) tempFile = ClipboardUtil.writeTempPng(png().buffer());
+        return tempFile;
+    }
+
+    /**
+     * Size of the saved (truecolor) PNG of {@link #pixels()} if it is known without waiting:
+     * captured or read already, or a file that {@link #pixels()} decoded. Otherwise -1.
+     */
+    private long savedPngSize() {
+        if (teedPng() != null) return saved.size();
+        if (image != null || !Boolean.TRUE.equals(fileReady)) return -1;
+        try {
+            return Files.size(pngPath);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /** Pixels: {@link #image()} or the decoded file; {@code null} if unavailable or too large. */
+    BufferedImage pixels() {
+        if (image != null) return image;
+        if (decoded == null && !streaming) {
+            if (fromHistory) {
+                decoded = ClipboardUtil.readImage(png.buffer());
+            } else if (saved != null) {
+                decoded = ClipboardUtil.readImage(saved.buffer());
+            } else {
+                Path file = file();
+                if (file != null) decoded = ClipboardUtil.readImage(file);
+            }
+        }
+        return decoded;
+    }
+
+    LazyImageSelection selection() {
+        if (selection == null) {
+            selection = fromHistory
+                    ? new LazyImageSelection(ClipboardUtil.toArray(png.buffer()), !streaming)
+                    : new LazyImageSelection(image, pngPath, written, !streaming);
+        }
+        return selection;
+    }
+
+    @Override
+    public void close() {
+        if (png != null) png.close();
+        png = null;
+        if (saved != null) saved.close();
+        saved = null;
+        if (tempFile != null) ClipboardUtil.deleteTempPng(tempFile);
+        tempFile = null;
+    }
+}
@@ -0,0 +1,25 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JFR event for one stage of one clipboard job (see {@link PipelineMetrics.Stage}). */
+@Name("io.github.nek0cha.screenshottoclipboard.ClipboardStage")
+@Label("Clipboard Stage")
+@Category({"ScreenshotToClipboard"})
+@Description("One stage of copying a screenshot to the clipboard")
+@StackTrace(false)
+class ClipboardStageEvent extends jdk.jfr.Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Backend")
+    String backend;
+
+    @Label("Success")
+    boolean success;
+}
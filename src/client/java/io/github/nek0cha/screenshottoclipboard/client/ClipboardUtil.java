@@ -3,31 +3,65 @@ import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import com.sun.jna.win32.StdCallLibrary;
 import com.sun.jna.win32.W32APIOptions;
+import io.github.nek0cha.screenshottoclipboard.client.PipelineMetrics.Span;
+import io.github.nek0cha.screenshottoclipboard.client.PipelineMetrics.Stage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import javax.imageio.ImageIO;
 import java.awt.*;
-import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.ClipboardOwner;
 import java.awt.datatransfer.Transferable;
-import java.awt.datatransfer.UnsupportedFlavorException;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
 /**
  * Java port of ClipboardImageUtils.kt (reference: hima-nokiwami mod).
  *
  * Strategy per OS:
  *   Windows : AWT Toolkit (primary) -> Win32 CF_DIB via JNA (fallback)
  *   macOS   : osascript (primary)   -> AWT fallback
- *   Linux   : wl-copy / xclip       -> AWT fallback
+ *   Linux   : wl-copy / in-process X11 owner / xclip -> AWT fallback
+ * Each of these is a {@link ClipboardBackend}; {@link ClipboardBackends} picks the order
+ * per screenshot from measured latency and trips backends that keep failing.
+ *
+ * Screenshots above {@link ScreenshotClipboardService#STREAMING_THRESHOLD_PIXELS} are never
+ * decoded whole: PNG backends take the saved file as-is and CF_DIB is streamed row by row.
+ * In file-reference mode ({@link ModConfig.ClipboardMode}) only the saved file's path is
+ * published, as a file list / {@code text/uri-list}.
  */
 public final class ClipboardUtil {
     private static final Logger LOGGER = LoggerFactory.getLogger("ScreenshotToClipboard");
+    /** Upper bound for the screenshot PNG to reach the disk (large screenshots can take a while). */
+    static final long FILE_WRITE_TIMEOUT_MS = 10_000;
+    private static final String OS = System.getProperty("os.name", "").toLowerCase();
+    private static final boolean IS_MAC = OS.contains("mac") || OS.contains("darwin");
+    private static final boolean IS_LINUX = OS.contains("linux");
+    static final boolean IS_WINDOWS = OS.contains("windows");
+    /** The preferred backends take pixels (AWT / CF_DIB), not the PNG file. */
+    private static final boolean DECODES_FIRST = IS_WINDOWS || !(IS_MAC || IS_LINUX);
+    /** Content key of the screenshot we last put on the clipboard, and how to tell it is still there. */
+    private record Owner(long key, BooleanSupplier stillOwned) {}
+    private static volatile Owner owner;
     private ClipboardUtil() {}
     // ------------------------------------------------------------------
     // Win32 JNA interfaces  (mirrors kernel32Extra / user32Clipboard in .kt)
@@ -45,98 +79,247 @@ public final class ClipboardUtil {
         boolean CloseClipboard();
         boolean EmptyClipboard();
         Pointer SetClipboardData(int uFormat, Pointer hMem);
+        int GetClipboardSequenceNumber();
     }
     // ------------------------------------------------------------------
     // Public API
     // ------------------------------------------------------------------
     public static boolean copyImageToClipboard(Path imagePath) {
-        if (!waitForFileStable(imagePath, 2500)) {
-            LOGGER.warn("[ScreenshotToClipboard] Screenshot file not ready: {}", imagePath);
-            return false;
-        }
-        BufferedImage image;
-        try {
-            image = ImageIO.read(imagePath.toFile());
-        } catch (IOException e) {
-            LOGGER.warn("[ScreenshotToClipboard] Failed to read screenshot: {}", imagePath, e);
-            return false;
+        return copyImageToClipboard(imagePath, null);
+    }
+    /**
+     * Copy {@code imagePath}. {@code written} is completed by the screenshot hook once
+     * the file is on disk; if {@code null} the file is watched instead. The PNG is only
+     * decoded if a backend or paste target actually needs pixels.
+     */
+    public static boolean copyImageToClipboard(Path imagePath, Future<?> written) {
+        return copyImageToClipboard(imagePath, written, null);
+    }
+    /**
+     * Same as {@link #copyImageToClipboard(Path, Future)}; {@code cancel} is checked between
+     * stages and a cancelled copy ends with {@link CancellationException}.
+     */
+    public static boolean copyImageToClipboard(Path imagePath, Future<?> written, CancellationSignal cancel) {
+        if (written == null && DECODES_FIRST) {
+            BufferedImage image = decodeWhileWriting(imagePath, cancel);
+            if (image != null) {
+                // The last rows are decoded right behind the write; IEND follows immediately.
+                if (!awaitPng(imagePath, null, cancel)) return false;
+                return copyBufferedImageToClipboard(image, imagePath, null, cancel);
+            }
         }
-        if (image == null) {
-            LOGGER.warn("[ScreenshotToClipboard] ImageIO.read returned null: {}", imagePath);
-            return false;
+        if (!awaitPng(imagePath, written, cancel)) return false;
+        return copyBufferedImageToClipboard(null, imagePath, null, cancel);
+    }
+    /**
+     * Copy pixels that are already in memory (e.g. snapshotted from the NativeImage
+     * before it was written). AWT / Win32 never touch the disk, Linux gets a PNG from
+     * {@link PngEncoder}; only macOS still needs {@code pngPath} and waits for {@code written}.
+     */
+    public static boolean copyImageToClipboard(BufferedImage image, Path pngPath, Future<?> written) {
+        return copyImageToClipboard(image, pngPath, written, null);
+    }
+    /**
+     * Same as {@link #copyImageToClipboard(BufferedImage, Path, Future)}; {@code cancel} is checked
+     * between stages and a cancelled copy ends with {@link CancellationException}.
+     */
+    public static boolean copyImageToClipboard(BufferedImage image, Path pngPath, Future<?> written,
+                                               CancellationSignal cancel) {
+        return copyBufferedImageToClipboard(image, pngPath, written, cancel);
+    }
+    /** Put a {@link ScreenshotHistory} entry back on the clipboard, straight from its in-memory PNG. */
+    static boolean copyHistoryEntry(ScreenshotHistory.Entry entry, CancellationSignal cancel) {
+        try (ClipboardRequest request = new ClipboardRequest(entry, cancel)) {
+            request.contentKey(entry.key());
+            return published(request, ClipboardBackends.copy(request));
         }
-        return copyBufferedImageToClipboard(image, imagePath);
     }
     // ------------------------------------------------------------------
     // OS dispatch  (mirrors copyBufferedImageToClipboard in .kt)
     // ------------------------------------------------------------------
-    private static boolean copyBufferedImageToClipboard(BufferedImage image, Path pngPath) {
-        String os = System.getProperty("os.name", "").toLowerCase();
-        if (os.contains("mac") || os.contains("darwin")) {
-            if (copyMac(pngPath)) return true;
-            return copyAwt(image);
-        }
-        if (os.contains("linux")) {
-            if (copyLinux(pngPath)) return true;
-            return copyAwt(image);
-        }
-        // Windows (and unknown): AWT primary, Win32 CF_DIB fallback
-        if (copyAwt(image)) return true;
-        if (os.contains("windows")) return copyWin32Dib(image);
-        LOGGER.warn("[ScreenshotToClipboard] Clipboard copy failed (os={}, java.awt.headless={})",
-                os, System.getProperty("java.awt.headless"));
-        return false;
+    /** {@code image} is {@code null} for file-only jobs, whose {@code pngPath} is already written. */
+    private static boolean copyBufferedImageToClipboard(BufferedImage image, Path pngPath, Future<?> written,
+                                                        CancellationSignal cancel) {
+        String name = pngPath != null ? pngPath.getFileName().toString() : "screenshot";
+        if (pngPath != null && prefersFileReference(image != null
+                ? (long) image.getWidth() * image.getHeight() : PngRowDecoder.pixelCount(pngPath))) {
+            try (ClipboardRequest request = ClipboardRequest.fileReference(pngPath, written, cancel)) {
+                return ClipboardBackends.copy(request);
+            }
+        }
+        boolean streaming = image == null && isStreamingSize(pngPath);
+        ClipboardRequest request = new ClipboardRequest(image, pngPath, written, cancel, streaming);
+        try {
+            long key = contentKey(request);
+            request.contentKey(key);
+            if (key != 0) {
+                Owner current = owner;
+                if (current != null && current.key() == key && current.stillOwned().getAsBoolean()) {
+                    LOGGER.debug("[ScreenshotToClipboard] Identical to the clipboard contents, skipped: {}", name);
+                    PipelineMetrics.dedupe(true);
+                    return true;
+                }
+                ScreenshotHistory.Entry cached = ScreenshotHistory.INSTANCE.find(key);
+                if (cached != null) {
+                    LOGGER.debug("[ScreenshotToClipboard] Identical to {}, re-copied from history: {}", cached.name(), name);
+                    PipelineMetrics.dedupe(false);
+                    return copyHistoryEntry(cached, cancel);
+                }
+            }
+            BufferedImage scaled = downscaleForClipboard(image, pngPath, cancel);
+            if (scaled != null) {
+                // The saved file is full size: backends get the scaled pixels (path-based ones via a
+                // temporary PNG that ClipboardRequest writes on demand and deletes when it is closed).
+                request.close();
+                request = new ClipboardRequest(scaled, null, null, cancel, false);
+                request.contentKey(key);
+            }
+            boolean ok = published(request, ClipboardBackends.copy(request));
+            if (ok) ScreenshotHistory.INSTANCE.capture(request, name);
+            return ok;
+        } finally {
+            request.close();
+        }
+    }
+    /**
+     * {@link ContentHash} of the pixels (or, for file-only jobs, the saved PNG, which the request
+     * keeps for the backends) mixed with the settings that change what is copied; 0 for
+     * screenshots too large to be worth hashing.
+     */
+    private static long contentKey(ClipboardRequest request) {
+        long hash;
+        try (Span span = PipelineMetrics.start(Stage.CONVERT, "hash")) {
+            if (request.image() != null) {
+                hash = ContentHash.of(request.image());
+            } else if (!request.streaming() && request.savedPath() != null) {
+                hash = ContentHash.of(request.savedPng().buffer());
+            } else {
+                span.success(false);
+                return 0;
+            }
+        } catch (IOException e) {
+            LOGGER.debug("[ScreenshotToClipboard] Failed to hash {}", request.savedPath(), e);
+            return 0;
+        }
+        ModConfig cfg = ModConfig.getInstance();
+        return hash ^ Objects.hash(cfg.maxClipboardWidth, cfg.maxClipboardHeight, cfg.maxClipboardMegapixels,
+                cfg.paletteColors, cfg.paletteDither, cfg.paletteMaxError) * 0x9E3779B97F4A7C15L;
+    }
+    /** Remembers what a successful copy put on the clipboard, for skipping an identical next one. */
+    private static boolean published(ClipboardRequest request, boolean ok) {
+        if (ok) {
+            BooleanSupplier stillOwned = request.ownership();
+            owner = request.contentKey() != 0 && stillOwned != null ? new Owner(request.contentKey(), stillOwned) : null;
+        }
+        return ok;
+    }
+    /** Whether a screenshot of {@code pixels} (-1 if unknown) is copied as a file reference. */
+    static boolean prefersFileReference(long pixels) {
+        ModConfig cfg = ModConfig.getInstance();
+        if (cfg.clipboardMode == null) return false;
+        return switch (cfg.clipboardMode) {
+            case FILE -> true;
+            case AUTO -> pixels >= 0 && pixels >= cfg.fileReferenceMegapixels * 1_000_000;
+            case IMAGE -> false;
+        };
+    }
+    /**
+     * Built-in backends for this OS, in default order. Tiers keep the richer formats first
+     * (e.g. AWT's PNG + bitmap over a bare CF_DIB); {@link ClipboardBackends} orders by
+     * latency within a tier.
+     */
+    static List<ClipboardBackend> platformBackends() {
+        List<ClipboardBackend> list = new ArrayList<>();
+        if (IS_MAC) {
+            list.add(ClipboardBackend.async("osascript", r -> 0, ClipboardUtil::copyMac));
+            list.add(ClipboardBackend.of("awt", r -> 1, ClipboardUtil::copyAwt));
+        } else if (IS_LINUX) {
+            if (isWayland()) {
+                list.add(ClipboardBackend.async("wl-copy", r -> 0,
+                        r -> copyProcess(List.of("wl-copy", "--type", mimeType(r)), r)));
+            }
+            list.add(ClipboardBackend.of("x11", r -> r.fileReference() ? -1 : 0, ClipboardUtil::copyX11));
+            list.add(ClipboardBackend.async("xclip", r -> 0,
+                    r -> copyProcess(List.of("xclip", "-selection", "clipboard", "-t", mimeType(r), "-i"), r)));
+            list.add(ClipboardBackend.of("awt", r -> 1, ClipboardUtil::copyAwt));
+        } else if (IS_WINDOWS) {
+            // Huge files: stream CF_DIB first, AWT would decode the whole image to offer it
+            list.add(ClipboardBackend.of("awt", r -> r.streaming() ? 1 : 0, ClipboardUtil::copyAwt));
+            list.add(ClipboardBackend.of("win32-dib", r -> r.fileReference() ? -1 : r.streaming() ? 0 : 1,
+                    ClipboardUtil::copyWin32Dib));
+        } else {
+            list.add(ClipboardBackend.of("awt", r -> 0, ClipboardUtil::copyAwt));
+        }
+        return list;
     }
     // ------------------------------------------------------------------
     // macOS  (mirrors copyBufferedImageToClipboardMac)
     // ------------------------------------------------------------------
-    private static boolean copyMac(Path pngPath) {
-        try {
-            String escaped = pngPath.toAbsolutePath().toString()
-                    .replace("\\", "\\\\").replace("\"", "\\\"");
-            String script = "set the clipboard to (read (POSIX file \""
-                    + escaped + "\") as \u00abclass PNGf\u00bb)";
-            return runProcess(List.of("osascript", "-e", script), null, 2000);
-        } catch (Throwable t) {
-            LOGGER.warn("[ScreenshotToClipboard] macOS osascript failed", t);
-            return false;
-        }
+    private static CompletableFuture<Boolean> copyMac(ClipboardRequest request) throws IOException {
+        Path pngPath = request.fileReference() ? request.file() : request.pngFile();
+        if (pngPath == null) return CompletableFuture.completedFuture(false);
+        String escaped = pngPath.toAbsolutePath().toString()
+                .replace("\\", "\\\\").replace("\"", "\\\"");
+        String script = request.fileReference()
+                ? "set the clipboard to (POSIX file \"" + escaped + "\")"
+                : "set the clipboard to (read (POSIX file \"" + escaped + "\") as \u00abclass PNGf\u00bb)";
+        return ProcessRunner.run(List.of("osascript", "-e", script), null, null, 2000);
     }
     // ------------------------------------------------------------------
     // Linux  (mirrors copyBufferedImageToClipboardLinux)
     // ------------------------------------------------------------------
-    private static boolean copyLinux(Path pngPath) {
-        try {
-            String sessionType = nvl(System.getenv("XDG_SESSION_TYPE"), "").toLowerCase().strip();
-            String waylandDisp = nvl(System.getenv("WAYLAND_DISPLAY"), "");
-            boolean wayland = "wayland".equals(sessionType) || !waylandDisp.isBlank();
-            if (wayland) {
-                if (runProcess(List.of("wl-copy", "--type", "image/png"), pngPath, 2000)) return true;
-            }
-            if (runProcess(List.of("xclip", "-selection", "clipboard", "-t", "image/png", "-i"), pngPath, 2000)) {
-                return true;
-            }
-            LOGGER.warn("[ScreenshotToClipboard] Linux clipboard unavailable. "
-                    + "Install wl-clipboard (wl-copy) or xclip. "
-                    + "(XDG_SESSION_TYPE={}, java.awt.headless={})",
-                    sessionType, System.getProperty("java.awt.headless"));
-            return false;
-        } catch (Throwable t) {
-            LOGGER.warn("[ScreenshotToClipboard] Linux clipboard fallback failed", t);
-            return false;
+    private static String mimeType(ClipboardRequest request) {
+        return request.fileReference() ? "text/uri-list" : "image/png";
+    }
+    /**
+     * Pipes the PNG into {@code command}: pooled bytes for in-memory jobs, history entries,
+     * palette PNGs and PNGs captured while they were written ({@link PngTee}), the saved file
+     * otherwise; file references pipe the file's URI.
+     */
+    private static CompletableFuture<Boolean> copyProcess(List<String> command, ClipboardRequest request)
+            throws IOException {
+        if (request.fileReference()) {
+            Path file = request.file();
+            if (file == null) return CompletableFuture.completedFuture(false);
+            byte[] uris = FileReferenceSelection.uriList(file).getBytes(StandardCharsets.US_ASCII);
+            return ProcessRunner.run(command, null, ByteBuffer.wrap(uris), 2000);
+        }
+        if (request.image() != null || request.fromHistory() || request.quantizes() || request.teedPng() != null) {
+            return ProcessRunner.run(command, request.png(), 2000);
         }
+        Path file = request.file();
+        return file != null ? ProcessRunner.run(command, file, null, 2000) : CompletableFuture.completedFuture(false);
+    }
+    private static boolean copyX11(ClipboardRequest request) throws IOException {
+        X11ClipboardOwner x11 = X11ClipboardOwner.get();
+        if (x11 == null) return false;
+        BufferPool.Lease png = request.png();
+        if (!x11.publish(png)) return false;
+        request.published(() -> x11.isServing(png));
+        return true;
     }
     // ------------------------------------------------------------------
     // AWT clipboard  (mirrors Toolkit section)
     // ------------------------------------------------------------------
-    private static boolean copyAwt(BufferedImage image) {
+    private static boolean copyAwt(ClipboardRequest request) {
+        if (request.fileReference()) {
+            Path file = request.file();
+            return file != null && copyAwtWithRetry(new FileReferenceSelection(file));
+        }
+        LazyImageSelection selection = request.selection();
+        if (!copyAwtWithRetry(selection)) return false;
+        // AWT on macOS does not report losing ownership reliably, so repeats are never skipped there.
+        if (!IS_MAC) request.published(selection::isOwned);
+        return true;
+    }
+    private static <T extends Transferable & ClipboardOwner> boolean copyAwtWithRetry(T selection) {
         Throwable last = null;
         for (int attempt = 0; attempt < 3; attempt++) {
             try {
                 if (EventQueue.isDispatchThread()) {
-                    doAwtCopy(image);
+                    doAwtCopy(selection);
                 } else {
-                    EventQueue.invokeAndWait(() -> doAwtCopy(image));
+                    EventQueue.invokeAndWait(() -> doAwtCopy(selection));
                 }
                 return true;
             } catch (IllegalStateException e) {
@@ -153,148 +336,380 @@ public final class ClipboardUtil {
         LOGGER.warn("[ScreenshotToClipboard] AWT clipboard copy failed", last);
         return false;
     }
-    private static void doAwtCopy(BufferedImage image) {
-        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new ImageSelection(image), null);
+    private static <T extends Transferable & ClipboardOwner> void doAwtCopy(T selection) {
+        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection, selection);
     }
     // ------------------------------------------------------------------
     // Win32 CF_DIB fallback  (mirrors copyBufferedImageToClipboardWin32Dib)
     // ------------------------------------------------------------------
-    private static boolean copyWin32Dib(BufferedImage image) {
+    private interface DibWriter {
+        void write(ByteBuffer dst) throws IOException;
+    }
+    private static boolean copyWin32Dib(ClipboardRequest request) {
+        boolean ok;
+        if (request.streaming()) {
+            Path file = request.file();
+            ok = file != null && copyWin32DibStreaming(file, request.cancel());
+        } else {
+            BufferedImage pixels = request.pixels();
+            ok = pixels != null && copyWin32Dib(pixels, request.cancel());
+        }
+        if (ok) {
+            // Every clipboard change bumps the sequence number; unchanged means still ours.
+            int seq = User32Clipboard.INSTANCE.GetClipboardSequenceNumber();
+            request.published(() -> User32Clipboard.INSTANCE.GetClipboardSequenceNumber() == seq);
+        }
+        return ok;
+    }
+    private static boolean copyWin32Dib(BufferedImage image, CancellationSignal cancel) {
+        return copyWin32Dib(image.getWidth(), image.getHeight(), dst -> DibEncoder.write(image, dst), cancel);
+    }
+    /** Decodes {@code pngPath} row by row straight into the clipboard memory (no full image in heap). */
+    private static boolean copyWin32DibStreaming(Path pngPath, CancellationSignal cancel) {
+        CancellationSignal.checkpoint(cancel);
+        try (PngRowDecoder png = PngRowDecoder.open(pngPath)) {
+            return copyWin32Dib(png.width(), png.height(), dst -> DibEncoder.write(png, dst), cancel);
+        } catch (IOException e) {
+            LOGGER.warn("[ScreenshotToClipboard] Streaming decode unavailable for {}", pngPath, e);
+            return false;
+        }
+    }
+    private static boolean copyWin32Dib(int width, int height, DibWriter writer, CancellationSignal cancel) {
+        CancellationSignal.checkpoint(cancel);
         try {
-            byte[] dib = buildDib24(image);
+            long dibSize = DibEncoder.dibSize(width, height);
+            if (dibSize > Integer.MAX_VALUE) {
+                LOGGER.warn("[ScreenshotToClipboard] Screenshot too large for CF_DIB: {}x{}", width, height);
+                return false;
+            }
             final int GMEM_MOVEABLE = 0x0002;
-            Pointer hGlobal = Kernel32Extra.INSTANCE.GlobalAlloc(GMEM_MOVEABLE, dib.length);
+            Pointer hGlobal = Kernel32Extra.INSTANCE.GlobalAlloc(GMEM_MOVEABLE, dibSize);
             if (hGlobal == null) return false;
             Pointer ptr = Kernel32Extra.INSTANCE.GlobalLock(hGlobal);
             if (ptr == null) {
                 Kernel32Extra.INSTANCE.GlobalFree(hGlobal);
                 return false;
             }
+            Span span = PipelineMetrics.start(Stage.CONVERT, "dib");
             try {
-                ptr.write(0, dib, 0, dib.length);
-            } finally {
+                // Encode header + rows straight into the locked global memory (no heap copy).
+                writer.write(ptr.getByteBuffer(0, dibSize));
+            } catch (Throwable t) {
+                span.success(false);
                 Kernel32Extra.INSTANCE.GlobalUnlock(hGlobal);
-            }
-            boolean opened = false;
-            for (int attempt = 0; attempt < 10; attempt++) {
-                if (User32Clipboard.INSTANCE.OpenClipboard(null)) { opened = true; break; }
-                if (attempt < 9) try { Thread.sleep(25); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); break; }
-            }
-            if (!opened) {
                 Kernel32Extra.INSTANCE.GlobalFree(hGlobal);
-                LOGGER.warn("[ScreenshotToClipboard] Win32 OpenClipboard failed");
-                return false;
-            }
-            boolean success = false;
-            try {
-                if (!User32Clipboard.INSTANCE.EmptyClipboard()) {
-                    LOGGER.warn("[ScreenshotToClipboard] Win32 EmptyClipboard failed");
-                    return false;
-                }
-                final int CF_DIB = 8;
-                Pointer res = User32Clipboard.INSTANCE.SetClipboardData(CF_DIB, hGlobal);
-                if (res == null || Pointer.nativeValue(res) == 0L) {
-                    LOGGER.warn("[ScreenshotToClipboard] Win32 SetClipboardData(CF_DIB) failed");
-                    return false;
-                }
-                success = true;
-                return true;
+                throw t;
             } finally {
-                User32Clipboard.INSTANCE.CloseClipboard();
-                if (!success) Kernel32Extra.INSTANCE.GlobalFree(hGlobal);
+                span.close();
+            }
+            Kernel32Extra.INSTANCE.GlobalUnlock(hGlobal);
+            if (cancel != null && cancel.isCancelled()) {
+                Kernel32Extra.INSTANCE.GlobalFree(hGlobal);
+                CancellationSignal.checkpoint(cancel);
             }
+            return setClipboardDib(hGlobal);
+        } catch (CancellationException e) {
+            throw e;
         } catch (Throwable t) {
             LOGGER.warn("[ScreenshotToClipboard] Win32 clipboard fallback failed", t);
             return false;
         }
     }
-    /**
-     * Build a bottom-up 24bpp BGR CF_DIB byte array.
-     * Mirrors buildDib24() in ClipboardImageUtils.kt.
-     */
-    private static byte[] buildDib24(BufferedImage image) {
-        int width  = image.getWidth();
-        int height = image.getHeight();
-        int rowSize   = ((width * 3 + 3) / 4) * 4;
-        int pixBytes  = rowSize * height;
-        int totalSize = 40 + pixBytes;
-        ByteBuffer buf = ByteBuffer.allocate(totalSize).order(ByteOrder.LITTLE_ENDIAN);
-        buf.putInt(40);      // biSize
-        buf.putInt(width);   // biWidth
-        buf.putInt(height);  // biHeight (positive = bottom-up)
-        buf.putShort((short) 1);   // biPlanes
-        buf.putShort((short) 24);  // biBitCount
-        buf.putInt(0);       // BI_RGB
-        buf.putInt(pixBytes);// biSizeImage
-        buf.putInt(0); buf.putInt(0); buf.putInt(0); buf.putInt(0);
-        int[] argb = new int[width * height];
-        image.getRGB(0, 0, width, height, argb, 0, width);
-        for (int y = height - 1; y >= 0; y--) {
-            int rowStart = buf.position();
-            for (int x = 0; x < width; x++) {
-                int px = argb[y * width + x];
-                buf.put((byte)  (px        & 0xFF));  // B
-                buf.put((byte) ((px >>  8) & 0xFF));  // G
-                buf.put((byte) ((px >> 16) & 0xFF));  // R
+    /** Hands {@code hGlobal} to the clipboard; frees it unless ownership was transferred. */
+    private static boolean setClipboardDib(Pointer hGlobal) {
+        boolean opened = false;
+        for (int attempt = 0; attempt < 10; attempt++) {
+            if (User32Clipboard.INSTANCE.OpenClipboard(null)) { opened = true; break; }
+            if (attempt < 9) try { Thread.sleep(25); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); break; }
+        }
+        if (!opened) {
+            Kernel32Extra.INSTANCE.GlobalFree(hGlobal);
+            LOGGER.warn("[ScreenshotToClipboard] Win32 OpenClipboard failed");
+            return false;
+        }
+        boolean success = false;
+        try {
+            if (!User32Clipboard.INSTANCE.EmptyClipboard()) {
+                LOGGER.warn("[ScreenshotToClipboard] Win32 EmptyClipboard failed");
+                return false;
             }
-            int pad = rowSize - (buf.position() - rowStart);
-            for (int i = 0; i < pad; i++) buf.put((byte) 0);
+            final int CF_DIB = 8;
+            Pointer res = User32Clipboard.INSTANCE.SetClipboardData(CF_DIB, hGlobal);
+            if (res == null || Pointer.nativeValue(res) == 0L) {
+                LOGGER.warn("[ScreenshotToClipboard] Win32 SetClipboardData(CF_DIB) failed");
+                return false;
+            }
+            success = true;
+            return true;
+        } finally {
+            User32Clipboard.INSTANCE.CloseClipboard();
+            if (!success) Kernel32Extra.INSTANCE.GlobalFree(hGlobal);
         }
-        return buf.array();
     }
     // ------------------------------------------------------------------
     // Helpers
     // ------------------------------------------------------------------
-    private static boolean waitForFileStable(Path path, long timeoutMs) {
-        long deadline = System.currentTimeMillis() + timeoutMs;
-        long lastSize = -1L;
-        while (System.currentTimeMillis() < deadline) {
+    /**
+     * Decodes a PNG that someone else is still writing, following the file as it grows, so
+     * time to pixels is about max(write, decode) instead of write + decode. Each row is
+     * unfiltered straight into the image's BGR raster. Returns {@code null} when there is
+     * nothing to overlap (already written, too large for the heap, file reference, or a
+     * layout {@link PngRowDecoder} does not handle); the caller then waits for the file.
+     */
+    private static BufferedImage decodeWhileWriting(Path pngPath, CancellationSignal cancel) {
+        if (pngPath == null || PngFileWatcher.isComplete(pngPath) || prefersFileReference(-1)) return null;
+        CancellationSignal.checkpoint(cancel);
+        BooleanSupplier cancelled = cancel != null ? cancel::isCancelled : () -> false;
+        try (Span span = PipelineMetrics.start(Stage.DECODE, "follow");
+             PngRowDecoder png = PngRowDecoder.follow(pngPath, FILE_WRITE_TIMEOUT_MS, cancelled)) {
+            int width = png.width(), height = png.height();
+            if (!ScreenshotClipboardService.shouldSnapshot(width, height)) {
+                span.success(false);
+                return null;
+            }
+            long start = System.nanoTime();
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+            byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            for (int y = 0, rowBytes = width * 3; y < height; y++) png.readRow(data, y * rowBytes, true);
+            LOGGER.debug("[ScreenshotToClipboard] Decoded {}x{} while it was being written: {} ms", width, height,
+                    (System.nanoTime() - start) / 1_000_000);
+            return image;
+        } catch (IOException e) {
+            CancellationSignal.checkpoint(cancel);
+            LOGGER.debug("[ScreenshotToClipboard] Cannot decode {} while it is written, waiting for it", pngPath, e);
+            return null;
+        }
+    }
+    /**
+     * Wait until {@code pngPath} is fully written. Uses the hook's completion token when
+     * there is one, otherwise falls back to {@link PngFileWatcher} (no sleep-polling).
+     * Returns early with {@link CancellationException} once {@code cancel} fires.
+     */
+    static boolean awaitPng(Path pngPath, Future<?> written, CancellationSignal cancel) {
+        if (pngPath == null) return false;
+        CancellationSignal.checkpoint(cancel);
+        boolean ready;
+        try (Span span = PipelineMetrics.start(Stage.FILE_WAIT, written != null ? "token" : "watch")) {
+            ready = span.result(awaitPngUntimed(pngPath, written, cancel));
+        }
+        CancellationSignal.checkpoint(cancel);
+        if (!ready) LOGGER.warn("[ScreenshotToClipboard] Screenshot file not ready: {}", pngPath);
+        return ready;
+    }
+    private static boolean awaitPngUntimed(Path pngPath, Future<?> written, CancellationSignal cancel) {
+        if (written != null) {
             try {
-                if (Files.exists(path)) {
-                    long size = Files.size(path);
-                    if (size > 0 && size == lastSize) return true;
-                    lastSize = size;
+                if (cancel != null && written instanceof CompletableFuture<?> token) {
+                    CompletableFuture.anyOf(token, cancel.future()).get(FILE_WRITE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    if (cancel.isCancelled()) return false;
+                } else {
+                    written.get(FILE_WRITE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
                 }
-            } catch (IOException ignored) {}
-            try { Thread.sleep(75); }
-            catch (InterruptedException e) { Thread.currentThread().interrupt(); return false; }
+                return Files.isRegularFile(pngPath);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException | TimeoutException | CancellationException e) {
+                return false;
+            }
         }
-        return false;
+        return PngFileWatcher.awaitWritten(pngPath, FILE_WRITE_TIMEOUT_MS,
+                cancel != null ? cancel::isCancelled : () -> false);
+    }
+    /** Blocking form of {@link ProcessRunner#run}, for warm-up probes and benchmarks. */
+    static boolean runProcess(List<String> command, Path stdinFile, ByteBuffer stdinBytes, long timeoutMs) {
+        return ProcessRunner.run(command, stdinFile, stdinBytes, timeoutMs).join();
+    }
+    /** PNG for the clipboard: a palette PNG when {@code paletteColors} is set and fine enough, truecolor otherwise. */
+    static byte[] encodePng(BufferedImage image) {
+        return encodePng(image, PngEncoder::encode, PngEncoder::encodeIndexed, png -> png.length, () -> -1);
     }
-    private static boolean runProcess(List<String> command, Path stdinFile, long timeoutMs) {
+    /**
+     * Same as {@link #encodePng(BufferedImage)}, into a {@link BufferPool} lease the caller must close.
+     * {@code truecolorSize} gives the size of a truecolor PNG of the same pixels that is already at
+     * hand (e.g. the saved screenshot), or -1; it is only asked for the palette debug report.
+     */
+    static BufferPool.Lease encodePngPooled(BufferedImage image, LongSupplier truecolorSize) {
+        return encodePng(image, PngEncoder::encodePooled, PngEncoder::encodeIndexedPooled, BufferPool.Lease::size,
+                truecolorSize);
+    }
+    private interface IndexedEncoder<T> {
+        T encode(int width, int height, byte[] indices, int[] palette, int level);
+    }
+    private static <T> T encodePng(BufferedImage image, BiFunction<BufferedImage, Integer, T> encoder,
+                                   IndexedEncoder<T> indexedEncoder, ToIntFunction<T> length,
+                                   LongSupplier truecolorSize) {
+        int level = ModConfig.getInstance().pngCompressionLevel;
+        if (PaletteQuantizer.isEnabled()) {
+            T png = encodePalettePng(image, level, indexedEncoder, length, truecolorSize);
+            if (png != null) return png;
+        }
+        long start = System.nanoTime();
+        T png;
+        Span span = PipelineMetrics.start(Stage.CONVERT, "png");
         try {
-            Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
-            if (stdinFile != null) {
-                try (var in = Files.newInputStream(stdinFile); var out = p.getOutputStream()) {
-                    in.transferTo(out);
-                }
-            } else {
-                p.getOutputStream().close();
+            png = encoder.apply(image, level);
+        } finally {
+            span.close();
+        }
+        LOGGER.debug("[ScreenshotToClipboard] Encoded {}x{} PNG (level {}): {} bytes in {} ms", image.getWidth(),
+                image.getHeight(), level, length.applyAsInt(png), (System.nanoTime() - start) / 1_000_000);
+        return png;
+    }
+    /**
+     * Quantizes {@code image} and encodes it as a palette PNG; {@code null} if the palette's error
+     * is above {@code paletteMaxError}. With debug logging on, reports what it saved against the
+     * truecolor PNG from {@code truecolorSize}; nothing is encoded twice for that.
+     */
+    private static <T> T encodePalettePng(BufferedImage image, int level, IndexedEncoder<T> encoder,
+                                          ToIntFunction<T> length, LongSupplier truecolorSize) {
+        ModConfig cfg = ModConfig.getInstance();
+        int width = image.getWidth(), height = image.getHeight();
+        long start = System.nanoTime();
+        PaletteQuantizer.Palette palette;
+        byte[] indices;
+        try (Span span = PipelineMetrics.start(Stage.CONVERT, "quantize")) {
+            palette = PaletteQuantizer.palette(image, cfg.paletteColors);
+            if (palette.rmsError() > cfg.paletteMaxError) {
+                span.success(false);
+                LOGGER.debug("[ScreenshotToClipboard] {}x{} needs more than {} colours (RMS error {} > {}), encoding truecolor",
+                        width, height, palette.size(), String.format("%.2f", palette.rmsError()), cfg.paletteMaxError);
+                return null;
+            }
+            indices = PaletteQuantizer.map(image, palette, cfg.paletteDither);
+        }
+        T png;
+        Span span = PipelineMetrics.start(Stage.CONVERT, "png");
+        try {
+            png = encoder.encode(width, height, indices, palette.rgb(), level);
+        } finally {
+            span.close();
+        }
+        if (LOGGER.isDebugEnabled()) {
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            int size = length.applyAsInt(png);
+            long truecolor = truecolorSize.getAsLong();
+            String saving = truecolor < 0 ? "saving unknown (no truecolor PNG at hand)"
+                    : String.format("truecolor PNG %d bytes, saved %d bytes (%d%%)", truecolor, truecolor - size,
+                            (truecolor - size) * 100 / Math.max(1, truecolor));
+            LOGGER.debug("[ScreenshotToClipboard] Encoded {}x{} palette PNG ({} colours, RMS error {}, level {}): {} bytes in {} ms; {}",
+                    width, height, palette.size(), String.format("%.2f", palette.rmsError()), level, size, millis, saving);
+        }
+        return png;
+    }
+    /**
+     * Applies the resolution cap from {@link ModConfig} ({@code maxClipboardWidth} etc.).
+     * File-only jobs are scaled straight from a {@link PngRowDecoder}, so huge screenshots
+     * never exist in memory at full size. Returns {@code null} if no scaling is needed.
+     */
+    private static BufferedImage downscaleForClipboard(BufferedImage image, Path pngPath, CancellationSignal cancel) {
+        if (!ImageDownscaler.isConfigured() || (image == null && pngPath == null)) return null;
+        CancellationSignal.checkpoint(cancel);
+        long start = System.nanoTime();
+        BufferedImage scaled;
+        int srcW, srcH;
+        if (image != null) {
+            srcW = image.getWidth();
+            srcH = image.getHeight();
+            int[] size = ImageDownscaler.configuredTargetSize(srcW, srcH);
+            if (size == null) return null;
+            Span span = PipelineMetrics.start(Stage.CONVERT, "resize");
+            try {
+                scaled = ImageDownscaler.downscale(image, size[0], size[1]);
+            } finally {
+                span.close();
             }
-            boolean done = p.waitFor(timeoutMs, TimeUnit.MILLISECONDS);
-            if (!done) { p.destroyForcibly(); return false; }
-            int exit = p.exitValue();
-            if (exit != 0) {
+        } else {
+            try (PngRowDecoder png = PngRowDecoder.open(pngPath)) {
+                srcW = png.width();
+                srcH = png.height();
+                int[] size = ImageDownscaler.configuredTargetSize(srcW, srcH);
+                if (size == null) return null;
+                Span span = PipelineMetrics.start(Stage.CONVERT, "resize");
                 try {
-                    String err = new String(p.getInputStream().readNBytes(4096)).strip();
-                    if (!err.isBlank()) LOGGER.warn("[ScreenshotToClipboard] Process {} => {}", command, err);
-                } catch (Throwable ignored) {}
+                    scaled = ImageDownscaler.downscale(png, size[0], size[1]);
+                } finally {
+                    span.close();
+                }
+            } catch (IOException e) {
+                if (isStreamingSize(pngPath)) {
+                    LOGGER.warn("[ScreenshotToClipboard] Cannot downscale {}, copying full size", pngPath, e);
+                    return null;
+                }
+                BufferedImage full = readImage(pngPath);
+                return full != null ? downscaleForClipboard(full, null, cancel) : null;
             }
-            return exit == 0;
-        } catch (Throwable t) { return false; }
+        }
+        LOGGER.debug("[ScreenshotToClipboard] Downscaled {}x{} -> {}x{} in {} ms", srcW, srcH,
+                scaled.getWidth(), scaled.getHeight(), (System.nanoTime() - start) / 1_000_000);
+        return scaled;
     }
-    private static String nvl(String v, String def) { return v != null ? v : def; }
-    // ------------------------------------------------------------------
-    // AWT Transferable
-    // ------------------------------------------------------------------
-    private static final class ImageSelection implements Transferable {
-        private final BufferedImage image;
-        ImageSelection(BufferedImage i) { this.image = i; }
-        @Override public DataFlavor[] getTransferDataFlavors() { return new DataFlavor[]{DataFlavor.imageFlavor}; }
-        @Override public boolean isDataFlavorSupported(DataFlavor f) { return DataFlavor.imageFlavor.equals(f); }
-        @Override public Object getTransferData(DataFlavor f) throws UnsupportedFlavorException {
-            if (!isDataFlavorSupported(f)) throw new UnsupportedFlavorException(f);
+    /** Writes {@code png} to a temporary file for the path-based backends (macOS). */
+    static Path writeTempPng(ByteBuffer png) {
+        try {
+            Path tmp = Files.createTempFile("screenshottoclipboard-", ".png");
+            tmp.toFile().deleteOnExit();
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer src = png.duplicate();
+                while (src.hasRemaining()) ch.write(src);
+            }
+            return tmp;
+        } catch (IOException e) {
+            LOGGER.warn("[ScreenshotToClipboard] Failed to write temporary screenshot", e);
+            return null;
+        }
+    }
+    /** Deletes a file from {@link #writeTempPng(ByteBuffer)} once no backend reads it any more. */
+    static void deleteTempPng(Path tmp) {
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+            LOGGER.debug("[ScreenshotToClipboard] Failed to delete temporary screenshot {}", tmp, e);
+        }
+    }
+    private static boolean isStreamingSize(Path pngPath) {
+        if (pngPath == null) return false;
+        long pixels = PngRowDecoder.pixelCount(pngPath);
+        return pixels >= ScreenshotClipboardService.STREAMING_THRESHOLD_PIXELS;
+    }
+    static BufferedImage readImage(Path path) {
+        try (Span span = PipelineMetrics.start(Stage.DECODE)) {
+            BufferedImage image = ImageIO.read(path.toFile());
+            span.success(image != null);
+            if (image == null) LOGGER.warn("[ScreenshotToClipboard] ImageIO.read returned null: {}", path);
+            return image;
+        } catch (IOException e) {
+            LOGGER.warn("[ScreenshotToClipboard] Failed to read screenshot: {}", path, e);
+            return null;
+        }
+    }
+    /** Decodes in-memory PNG bytes (e.g. a history entry). */
+    static BufferedImage readImage(ByteBuffer png) {
+        try (Span span = PipelineMetrics.start(Stage.DECODE)) {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(toArray(png)));
+            span.success(image != null);
             return image;
+        } catch (IOException e) {
+            LOGGER.warn("[ScreenshotToClipboard] Failed to decode in-memory screenshot", e);
+            return null;
+        }
+    }
+    static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+    static boolean isWayland() {
+        String sessionType = nvl(System.getenv("XDG_SESSION_TYPE"), "").toLowerCase().strip();
+        return "wayland".equals(sessionType) || !nvl(System.getenv("WAYLAND_DISPLAY"), "").isBlank();
+    }
+    /** Loads the Win32 clipboard bindings; {@code false} if kernel32 / user32 are unavailable. */
+    static boolean loadWin32() {
+        try {
+            return Kernel32Extra.INSTANCE != null && User32Clipboard.INSTANCE != null;
+        } catch (Throwable t) {
+            return false;
         }
     }
+    private static String nvl(String v, String def) { return v != null ? v : def; }
 }
\ No newline at end of file
@@ -0,0 +1,158 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Background warm-up at client init, so the first screenshot does not pay for
+ * loading JNA bindings, AWT / ImageIO initialization, codec class loading or the
+ * first process spawn.
+ *
+ * While warming up it probes which clipboard backends work on this machine; the
+ * result is cached and lets {@link ClipboardBackends} try backends that are known to be
+ * missing last. Each probe stands alone: one that throws leaves its backend unknown
+ * rather than unavailable, and a backend that copies successfully later is no longer
+ * considered missing. If none is usable a single diagnostic is logged.
+ * Backend ids are the ones used by {@link PipelineMetrics} (e.g. {@code "wl-copy"}).
+ */
+final class ClipboardWarmup {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("ScreenshotToClipboard");
+
+    private enum Probe { AVAILABLE, UNAVAILABLE, UNKNOWN }
+
+    @FunctionalInterface
+    private interface Check {
+        boolean run() throws Exception;
+    }
+
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
+    private static final CompletableFuture<Map<String, Probe>> PROBED = new CompletableFuture<>();
+    /** Backends probed as unavailable that have since copied successfully. */
+    private static final Set<String> WORKED = ConcurrentHashMap.newKeySet();
+
+    private ClipboardWarmup() {}
+
+    /** Starts the warm-up on a low-priority daemon thread (once). */
+    static void start() {
+        if (!STARTED.compareAndSet(false, true)) return;
+        Thread t = new Thread(ClipboardWarmup::run, "screenshot-to-clipboard-warmup");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    /** Backends found usable, or {@code null} while the probe has not finished. */
+    static Set<String> availableBackends() {
+        Map<String, Probe> probed = PROBED.getNow(null);
+        return probed == null ? null : withResult(probed, Probe.AVAILABLE);
+    }
+
+    /**
+     * True only once the probe has finished and found {@code backend} unusable, and it has
+     * not copied successfully since. Backends that were not probed, or whose probe failed,
+     * are not known to be unavailable.
+     */
+    static boolean isKnownUnavailable(String backend) {
+        Map<String, Probe> probed = PROBED.getNow(null);
+        return probed != null && probed.get(backend) == Probe.UNAVAILABLE && !WORKED.contains(backend);
+    }
+
+    /** Records that {@code backend} copied successfully, overruling a failed probe. */
+    static void markWorking(String backend) {
+        if (WORKED.add(backend)) {
+            LOGGER.info("[ScreenshotToClipboard] Clipboard backend {} works after all", backend);
+        }
+    }
+
+    private static void run() {
+        long start = System.nanoTime();
+        String os = System.getProperty("os.name", "").toLowerCase();
+        Map<String, Probe> probed = new LinkedHashMap<>();
+        try {
+            warmCodecs();
+        } catch (Throwable t) {
+            LOGGER.debug("[ScreenshotToClipboard] Codec warm-up failed", t);
+        }
+        try {
+            if (os.contains("mac") || os.contains("darwin")) {
+                probe(probed, "osascript", () -> probeCommand(List.of("osascript", "-e", "return")));
+            } else if (os.contains("linux")) {
+                if (ClipboardUtil.isWayland()) probe(probed, "wl-copy", () -> probeCommand(List.of("wl-copy", "--version")));
+                probe(probed, "x11", () -> X11ClipboardOwner.get() != null);
+                probe(probed, "xclip", () -> probeCommand(List.of("xclip", "-version")));
+            } else if (os.contains("windows")) {
+                probe(probed, "win32-dib", ClipboardUtil::loadWin32);
+            }
+            probe(probed, "awt", ClipboardWarmup::probeAwt);
+        } finally {
+            PROBED.complete(Map.copyOf(probed));
+        }
+
+        Set<String> available = withResult(probed, Probe.AVAILABLE);
+        Set<String> unknown = withResult(probed, Probe.UNKNOWN);
+        LOGGER.info("[ScreenshotToClipboard] Warm-up done in {} ms, clipboard backends: {}{}",
+                (System.nanoTime() - start) / 1_000_000, available, unknown.isEmpty() ? "" : ", unknown: " + unknown);
+        if (available.isEmpty() && unknown.isEmpty()) {
+            LOGGER.warn("[ScreenshotToClipboard] No usable clipboard backend found; screenshots will not be copied. "
+                    + "On Linux install wl-clipboard (Wayland) or libX11 / xclip (X11). "
+                    + "(os={}, java.awt.headless={}, XDG_SESSION_TYPE={})",
+                    os, System.getProperty("java.awt.headless"), System.getenv("XDG_SESSION_TYPE"));
+        }
+    }
+
+    /** Loads ImageIO plugins and runs the encoders once on a tiny image. */
+    private static void warmCodecs() {
+        ImageIO.getImageReadersByFormatName("png").hasNext();
+        BufferedImage tiny = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        PngEncoder.encode(tiny, ModConfig.getInstance().pngCompressionLevel);
+        DibEncoder.write(tiny, ByteBuffer.allocate((int) DibEncoder.dibSize(64, 64)));
+    }
+
+    /** Runs one probe; a probe that throws leaves {@code backend} unknown. */
+    private static void probe(Map<String, Probe> results, String backend, Check check) {
+        Probe result;
+        try {
+            result = check.run() ? Probe.AVAILABLE : Probe.UNAVAILABLE;
+        } catch (Throwable t) {
+            LOGGER.debug("[ScreenshotToClipboard] Probing clipboard backend {} failed", backend, t);
+            result = Probe.UNKNOWN;
+        }
+        results.put(backend, result);
+    }
+
+    private static Set<String> withResult(Map<String, Probe> probed, Probe result) {
+        return probed.entrySet().stream().filter(e -> e.getValue() == result).map(Map.Entry::getKey)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private static boolean probeCommand(List<String> command) {
+        return ClipboardUtil.runProcess(command, null, null, 2000);
+    }
+
+    private static boolean probeAwt() {
+        if (GraphicsEnvironment.isHeadless()) return false;
+        try {
+            Toolkit.getDefaultToolkit().getSystemClipboard();
+            return true;
+        } catch (Throwable t) {
+            LOGGER.debug("[ScreenshotToClipboard] AWT clipboard unavailable", t);
+            return false;
+        }
+    }
+}
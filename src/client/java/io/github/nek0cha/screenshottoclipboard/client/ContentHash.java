@@ -0,0 +1,117 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.stream.IntStream;
+
+/**
+ * Fast non-cryptographic 64-bit content hash of screenshots, used to recognise repeats
+ * (F2 on a static scene) without comparing pixels.
+ *
+ * The core is an xxHash64-style loop with four independent lanes over 8-byte words, so
+ * the multiplies pipeline. Input is cut into fixed-size chunks that are hashed in parallel
+ * on the common fork-join pool for large frames, and the chunk hashes are folded in order,
+ * so the result does not depend on the degree of parallelism. Pixels are hashed as packed
+ * RGB rows, so the same picture hashes the same whatever the raster layout.
+ */
+final class ContentHash {
+
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    /** Bytes per chunk; each chunk is one parallel task. */
+    private static final int CHUNK_BYTES = 1 << 20;
+    /** Inputs at least this large are hashed chunk-parallel. */
+    private static final long PARALLEL_THRESHOLD = 4L << 20;
+
+    private ContentHash() {}
+
+    /** Hash of the image's RGB pixels and dimensions. */
+    static long of(BufferedImage image) {
+        int width = image.getWidth(), height = image.getHeight();
+        int rowBytes = width * 3;
+        int rowsPerChunk = Math.max(1, CHUNK_BYTES / Math.max(1, rowBytes));
+        int chunks = (height + rowsPerChunk - 1) / rowsPerChunk;
+        RowReader reader = RowReader.of(image);
+        long[] hashes = new long[chunks];
+        IntStream tasks = IntStream.range(0, chunks);
+        if ((long) rowBytes * height >= PARALLEL_THRESHOLD) tasks = tasks.parallel();
+        tasks.forEach(c -> {
+            int start = c * rowsPerChunk, end = Math.min(height, start + rowsPerChunk);
+            byte[] rows = new byte[(end - start) * rowBytes];
+            for (int y = start; y < end; y++) reader.read(y, rows, (y - start) * rowBytes, false);
+            hashes[c] = hash(ByteBuffer.wrap(rows).order(ByteOrder.LITTLE_ENDIAN), 0, rows.length, c);
+        });
+        return fold(hashes, (long) width << 32 | height);
+    }
+
+    /** Hash of the buffer's remaining bytes (e.g. an encoded PNG); the buffer's position is not changed. */
+    static long of(ByteBuffer bytes) {
+        ByteBuffer src = bytes.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int length = src.remaining();
+        int chunks = Math.max(1, (length + CHUNK_BYTES - 1) / CHUNK_BYTES);
+        long[] hashes = new long[chunks];
+        IntStream tasks = IntStream.range(0, chunks);
+        if (length >= PARALLEL_THRESHOLD) tasks = tasks.parallel();
+        tasks.forEach(c -> {
+            int off = c * CHUNK_BYTES;
+            hashes[c] = hash(src, off, Math.min(CHUNK_BYTES, length - off), c);
+        });
+        return fold(hashes, length);
+    }
+
+    // ------------------------------------------------------------------
+    // Core
+    // ------------------------------------------------------------------
+
+    /** xxHash64-style hash of {@code len} bytes at absolute index {@code off} (little-endian buffer). */
+    static long hash(ByteBuffer buf, int off, int len, long seed) {
+        int end = off + len;
+        int i = off;
+        long h;
+        if (len >= 32) {
+            long v1 = seed + P1 + P2, v2 = seed + P2, v3 = seed, v4 = seed - P1;
+            for (int limit = end - 32; i <= limit; i += 32) {
+                v1 = round(v1, buf.getLong(i));
+                v2 = round(v2, buf.getLong(i + 8));
+                v3 = round(v3, buf.getLong(i + 16));
+                v4 = round(v4, buf.getLong(i + 24));
+            }
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(merge(merge(merge(h, v1), v2), v3), v4);
+        } else {
+            h = seed + P5;
+        }
+        h += len;
+        for (; i + 8 <= end; i += 8) h = Long.rotateLeft(h ^ round(0, buf.getLong(i)), 27) * P1 + P4;
+        for (; i < end; i++) h = Long.rotateLeft(h ^ (buf.get(i) & 0xFFL) * P5, 11) * P1;
+        return avalanche(h);
+    }
+
+    private static long fold(long[] hashes, long salt) {
+        long h = P5 ^ salt * P3;
+        for (long c : hashes) h = Long.rotateLeft(h ^ round(0, c), 27) * P1 + P4;
+        return avalanche(h);
+    }
+
+    private static long round(long acc, long v) {
+        acc += v * P2;
+        return Long.rotateLeft(acc, 31) * P1;
+    }
+
+    private static long merge(long h, long v) {
+        return (h ^ round(0, v)) * P1 + P4;
+    }
+
+    private static long avalanche(long h) {
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        return h ^ (h >>> 32);
+    }
+}
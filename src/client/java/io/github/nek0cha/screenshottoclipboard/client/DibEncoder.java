@@ -0,0 +1,92 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.stream.IntStream;
+
+/**
+ * Encodes a bottom-up 24bpp BGR CF_DIB (BITMAPINFOHEADER + pixels) straight into
+ * a destination buffer, normally the {@code GlobalLock}ed clipboard memory.
+ *
+ * Pixels are read from the image's raster without {@code getRGB} when the layout
+ * is a known packed-int or interleaved-byte one, and rows are converted in parallel
+ * for large images. Output is byte-for-byte identical to the old {@code buildDib24}.
+ * Huge screenshots can instead be streamed row by row from a {@link PngRowDecoder}.
+ */
+final class DibEncoder {
+
+    static final int HEADER_SIZE = 40;
+    /** Images at least this large (in pixels) are converted on the common fork-join pool. */
+    private static final long PARALLEL_THRESHOLD = 1L << 20;
+    private static final int ROWS_PER_TASK = 64;
+
+    private DibEncoder() {}
+
+    static int rowSize(int width) {
+        return ((width * 3 + 3) / 4) * 4;
+    }
+
+    static long dibSize(int width, int height) {
+        return HEADER_SIZE + (long) rowSize(width) * height;
+    }
+
+    /**
+     * Write the DIB for {@code image} at index 0 of {@code dst}.
+     * {@code dst} must hold at least {@link #dibSize} bytes; its position is not changed.
+     */
+    static void write(BufferedImage image, ByteBuffer dst) {
+        int width  = image.getWidth();
+        int height = image.getHeight();
+        int rowSize = rowSize(width);
+        writeHeader(width, height, dst);
+
+        RowReader reader = RowReader.of(image);
+        int bands = (height + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+        IntStream tasks = IntStream.range(0, bands);
+        if ((long) width * height >= PARALLEL_THRESHOLD) tasks = tasks.parallel();
+        tasks.forEach(band -> {
+            byte[] row = new byte[rowSize];
+            int end = Math.min(height, (band + 1) * ROWS_PER_TASK);
+            for (int y = band * ROWS_PER_TASK; y < end; y++) {
+                reader.read(y, row, 0, true);
+                // absolute bulk put: no shared position, safe across threads
+                dst.put(HEADER_SIZE + (height - 1 - y) * rowSize, row);
+            }
+        });
+    }
+
+    /**
+     * Stream the DIB for {@code png} into {@code dst}, one decoded row at a time.
+     * Memory use is a single row regardless of the image size.
+     */
+    static void write(PngRowDecoder png, ByteBuffer dst) throws IOException {
+        int width  = png.width();
+        int height = png.height();
+        int rowSize = rowSize(width);
+        writeHeader(width, height, dst);
+
+        byte[] row = new byte[rowSize];
+        for (int y = 0; y < height; y++) {
+            png.readRow(row, 0, true);
+            dst.put(HEADER_SIZE + (height - 1 - y) * rowSize, row);
+        }
+    }
+
+    private static void writeHeader(int width, int height, ByteBuffer dst) {
+        int pixBytes = rowSize(width) * height;
+        if (dst.capacity() < HEADER_SIZE + (long) pixBytes) {
+            throw new IllegalArgumentException("DIB buffer too small: " + dst.capacity());
+        }
+        ByteBuffer header = dst.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, HEADER_SIZE);        // biSize
+        header.putInt(4, width);              // biWidth
+        header.putInt(8, height);             // biHeight (positive = bottom-up)
+        header.putShort(12, (short) 1);       // biPlanes
+        header.putShort(14, (short) 24);      // biBitCount
+        header.putInt(16, 0);                 // BI_RGB
+        header.putInt(20, pixBytes);          // biSizeImage
+        header.putInt(24, 0); header.putInt(28, 0); header.putInt(32, 0); header.putInt(36, 0);
+    }
+}
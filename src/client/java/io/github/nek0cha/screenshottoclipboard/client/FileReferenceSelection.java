@@ -0,0 +1,62 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.ClipboardOwner;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AWT clipboard contents that reference the saved screenshot instead of carrying its
+ * pixels: {@link DataFlavor#javaFileListFlavor} (CF_HDROP on Windows, a file URL on
+ * macOS) and {@code text/uri-list}. Publishing it costs the same for any image size.
+ */
+final class FileReferenceSelection implements Transferable, ClipboardOwner {
+
+    static final DataFlavor URI_LIST_FLAVOR = createUriListFlavor();
+
+    private final Path path;
+
+    FileReferenceSelection(Path path) {
+        this.path = path.toAbsolutePath();
+    }
+
+    /** {@code text/uri-list} payload (RFC 2483: one URI per line, CRLF-terminated). */
+    static String uriList(Path path) {
+        return path.toAbsolutePath().toUri().toASCIIString() + "\r\n";
+    }
+
+    @Override
+    public DataFlavor[] getTransferDataFlavors() {
+        List<DataFlavor> flavors = new ArrayList<>(2);
+        flavors.add(DataFlavor.javaFileListFlavor);
+        if (URI_LIST_FLAVOR != null) flavors.add(URI_LIST_FLAVOR);
+        return flavors.toArray(new DataFlavor[0]);
+    }
+
+    @Override
+    public boolean isDataFlavorSupported(DataFlavor f) {
+        return DataFlavor.javaFileListFlavor.equals(f) || (URI_LIST_FLAVOR != null && URI_LIST_FLAVOR.equals(f));
+    }
+
+    @Override
+    public Object getTransferData(DataFlavor f) throws UnsupportedFlavorException {
+        if (DataFlavor.javaFileListFlavor.equals(f)) return List.of(path.toFile());
+        if (URI_LIST_FLAVOR != null && URI_LIST_FLAVOR.equals(f)) return uriList(path);
+        throw new UnsupportedFlavorException(f);
+    }
+
+    @Override
+    public void lostOwnership(Clipboard clipboard, Transferable contents) {}
+
+    private static DataFlavor createUriListFlavor() {
+        try {
+            return new DataFlavor("text/uri-list; class=java.lang.String");
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Area-average (box) downscaler for the clipboard resolution cap.
+ *
+ * Every source pixel contributes to the output pixels it overlaps, weighted by the
+ * covered area, which gives the same quality as AWT's {@code SCALE_AREA_AVERAGING}
+ * without its per-pixel image filter overhead. Output rows are split into tiles that
+ * are scaled on the common fork-join pool; each tile reads its source rows in order,
+ * so a sequential {@link PngRowDecoder} can feed a single tile directly.
+ */
+final class ImageDownscaler {
+
+    /** Output rows per fork-join task. */
+    private static final int ROWS_PER_TILE = 32;
+    /** Output images at least this large (in pixels) are scaled in parallel. */
+    private static final long PARALLEL_THRESHOLD = 1L << 18;
+
+    private ImageDownscaler() {}
+
+    /**
+     * Largest size that fits {@code maxWidth}, {@code maxHeight} and {@code maxMegapixels}
+     * while keeping the aspect ratio ({@code 0} = no limit). Returns {@code null} if the
+     * image already fits.
+     */
+    static int[] targetSize(int width, int height, int maxWidth, int maxHeight, double maxMegapixels) {
+        double scale = 1.0;
+        if (maxWidth > 0)  scale = Math.min(scale, (double) maxWidth / width);
+        if (maxHeight > 0) scale = Math.min(scale, (double) maxHeight / height);
+        if (maxMegapixels > 0) scale = Math.min(scale, Math.sqrt(maxMegapixels * 1_000_000 / ((double) width * height)));
+        if (scale >= 1.0) return null;
+        int w = Math.max(1, (int) Math.floor(width * scale));
+        int h = Math.max(1, (int) Math.floor(height * scale));
+        return w < width || h < height ? new int[] {w, h} : null;
+    }
+
+    /** True if any resolution limit is set in {@link ModConfig}. */
+    static boolean isConfigured() {
+        ModConfig cfg = ModConfig.getInstance();
+        return cfg.maxClipboardWidth > 0 || cfg.maxClipboardHeight > 0 || cfg.maxClipboardMegapixels > 0;
+    }
+
+    /** Target size for the limits in {@link ModConfig}, or {@code null} if the image already fits. */
+    static int[] configuredTargetSize(int width, int height) {
+        ModConfig cfg = ModConfig.getInstance();
+        return targetSize(width, height, cfg.maxClipboardWidth, cfg.maxClipboardHeight, cfg.maxClipboardMegapixels);
+    }
+
+    static BufferedImage downscale(BufferedImage image, int width, int height) {
+        return scale(RowReader.of(image), image.getWidth(), image.getHeight(), width, height, true);
+    }
+
+    /** Downscale straight from a row decoder; the full-size image never exists in memory. */
+    static BufferedImage downscale(PngRowDecoder png, int width, int height) throws IOException {
+        RowReader sequential = (y, dst, off, bgr) -> {
+            try {
+                png.readRow(dst, off, bgr);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            return scale(sequential, png.width(), png.height(), width, height, false);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Scaling
+    // ------------------------------------------------------------------
+
+    /** Contributions of source indices to each output index; weights of one output sum to 1. */
+    private record Weights(int[] first, int[] offset, float[] weight) {
+        static Weights of(int srcLen, int dstLen) {
+            double step = (double) srcLen / dstLen;
+            int[] first = new int[dstLen];
+            int[] offset = new int[dstLen + 1];
+            float[] weight = new float[srcLen + 2 * dstLen];
+            int n = 0;
+            for (int i = 0; i < dstLen; i++) {
+                double lo = i * step;
+                double hi = Math.min(srcLen, (i + 1) * step);
+                int j0 = (int) lo;
+                int j1 = Math.min(srcLen, (int) Math.ceil(hi));
+                first[i] = j0;
+                offset[i] = n;
+                for (int j = j0; j < j1; j++) {
+                    weight[n++] = (float) ((Math.min(hi, j + 1) - Math.max(lo, j)) / step);
+                }
+            }
+            offset[dstLen] = n;
+            return new Weights(first, offset, weight);
+        }
+    }
+
+    private static BufferedImage scale(RowReader src, int srcW, int srcH, int dstW, int dstH, boolean parallel) {
+        Weights wx = Weights.of(srcW, dstW);
+        Weights wy = Weights.of(srcH, dstH);
+        BufferedImage out = new BufferedImage(dstW, dstH, BufferedImage.TYPE_INT_RGB);
+        int[] dst = ((DataBufferInt) out.getRaster().getDataBuffer()).getData();
+
+        int tiles = (dstH + ROWS_PER_TILE - 1) / ROWS_PER_TILE;
+        if (!parallel) {
+            scaleRows(src, srcW, wx, wy, 0, dstH, dst, dstW);
+            return out;
+        }
+        IntStream tasks = IntStream.range(0, tiles);
+        if ((long) dstW * dstH >= PARALLEL_THRESHOLD) tasks = tasks.parallel();
+        tasks.forEach(t -> scaleRows(src, srcW, wx, wy,
+                t * ROWS_PER_TILE, Math.min(dstH, (t + 1) * ROWS_PER_TILE), dst, dstW));
+        return out;
+    }
+
+    private static void scaleRows(RowReader src, int srcW, Weights wx, Weights wy,
+                                  int y0, int y1, int[] dst, int dstW) {
+        byte[] row = new byte[srcW * 3];
+        float[] line = new float[dstW * 3];     // current source row, scaled horizontally
+        float[] acc  = new float[dstW * 3];
+        int loaded = -1;
+        for (int oy = y0; oy < y1; oy++) {
+            Arrays.fill(acc, 0f);
+            int sy = wy.first()[oy];
+            for (int k = wy.offset()[oy]; k < wy.offset()[oy + 1]; k++, sy++) {
+                // Adjacent output rows share at most one source row: keep it instead of re-reading.
+                if (sy != loaded) {
+                    src.read(sy, row, 0, false);
+                    scaleLine(row, wx, line, dstW);
+                    loaded = sy;
+                }
+                float w = wy.weight()[k];
+                for (int i = 0; i < acc.length; i++) acc[i] += w * line[i];
+            }
+            for (int x = 0, i = 0, o = oy * dstW; x < dstW; x++, i += 3) {
+                dst[o + x] = clamp(acc[i]) << 16 | clamp(acc[i + 1]) << 8 | clamp(acc[i + 2]);
+            }
+        }
+    }
+
+    private static void scaleLine(byte[] row, Weights wx, float[] line, int dstW) {
+        for (int x = 0, o = 0; x < dstW; x++, o += 3) {
+            float r = 0, g = 0, b = 0;
+            int s = wx.first()[x] * 3;
+            for (int k = wx.offset()[x]; k < wx.offset()[x + 1]; k++, s += 3) {
+                float w = wx.weight()[k];
+                r += w * (row[s] & 0xFF);
+                g += w * (row[s + 1] & 0xFF);
+                b += w * (row[s + 2] & 0xFF);
+            }
+            line[o] = r; line[o + 1] = g; line[o + 2] = b;
+        }
+    }
+
+    private static int clamp(float v) {
+        int i = Math.round(v);
+        return i < 0 ? 0 : Math.min(255, i);
+    }
+}
@@ -0,0 +1,191 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.ClipboardOwner;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AWT clipboard contents that offer {@code image/png}, {@link DataFlavor#imageFlavor}
+ * and {@link DataFlavor#javaFileListFlavor}, each produced only when a paste target
+ * first asks for it.
+ *
+ * PNG bytes come from the saved file when it is available, otherwise (and always in palette
+ * mode, see {@link PaletteQuantizer}) they are encoded from the pixels; the image is the pixel snapshot or, for file-only jobs,
+ * decoded on demand. Produced representations are cached up to {@link #CACHE_CAP_BYTES}
+ * and everything is released in {@link #lostOwnership}.
+ *
+ * Windows AWT renders every offered flavor inside {@code setContents} on the EDT, so
+ * there {@code image/png} is only offered when the bytes already exist (history entries).
+ * The file list is only offered once the screenshot is on disk.
+ */
+final class LazyImageSelection implements Transferable, ClipboardOwner {
+
+    static final DataFlavor PNG_FLAVOR = createPngFlavor();
+    /** Largest total size of cached representations (PNG bytes + decoded image). */
+    private static final long CACHE_CAP_BYTES = 64L * 1024 * 1024;
+
+    private final Path pngPath;
+    private final Future<?> written;
+    private final boolean decodable;
+    private BufferedImage pixels;
+    /** Our reference to {@link #pixels} if it is a pooled snapshot, dropped in {@link #lostOwnership}. */
+    private BufferPool.Pixels pooledPixels;
+    /** Encoded PNG that the other representations are derived from (history re-copies). */
+    private byte[] pngSource;
+    private byte[] pngCache;
+    private BufferedImage decodedCache;
+    private boolean released;
+
+    /**
+     * @param pixels  in-memory pixels, or {@code null} to decode {@code pngPath} on demand
+     * @param pngPath saved screenshot, or {@code null} if there is none
+     * @param written completed once {@code pngPath} is on disk, or {@code null} if it already is
+     */
+    LazyImageSelection(BufferedImage pixels, Path pngPath, Future<?> written) {
+        this(pixels, pngPath, written, true);
+    }
+
+    /**
+     * @param decodable {@code false} for screenshots too large to decode into the heap;
+     *                  {@link DataFlavor#imageFlavor} is then not offered
+     */
+    LazyImageSelection(BufferedImage pixels, Path pngPath, Future<?> written, boolean decodable) {
+        this.pixels = pixels;
+        this.pngPath = pngPath;
+        this.written = written;
+        this.decodable = decodable || pixels != null;
+        BufferPool.Pixels pooled = BufferPool.pixelsOf(pixels);
+        this.pooledPixels = pooled != null ? pooled.retain() : null;
+    }
+
+    /** Contents backed only by encoded PNG bytes, e.g. a {@link ScreenshotHistory} entry. */
+    LazyImageSelection(byte[] png, boolean decodable) {
+        this(null, null, null, decodable);
+        this.pngSource = png;
+    }
+
+    @Override
+    public DataFlavor[] getTransferDataFlavors() {
+        List<DataFlavor> flavors = new ArrayList<>(3);
+        if (PNG_FLAVOR != null && (pngSource != null || !ClipboardUtil.IS_WINDOWS)) flavors.add(PNG_FLAVOR);
+        if (decodable) flavors.add(DataFlavor.imageFlavor);
+        if (pngPath != null && isOnDisk()) flavors.add(DataFlavor.javaFileListFlavor);
+        return flavors.toArray(new DataFlavor[0]);
+    }
+
+    @Override
+    public boolean isDataFlavorSupported(DataFlavor f) {
+        for (DataFlavor flavor : getTransferDataFlavors()) {
+            if (flavor.equals(f)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized Object getTransferData(DataFlavor f) throws UnsupportedFlavorException, IOException {
+        if (released || !isDataFlavorSupported(f)) throw new UnsupportedFlavorException(f);
+        if (DataFlavor.imageFlavor.equals(f)) return image();
+        if (DataFlavor.javaFileListFlavor.equals(f)) return List.of(pngPath.toFile());
+        return new ByteArrayInputStream(png());
+    }
+
+    /** {@code false} once another application has replaced the clipboard contents. */
+    synchronized boolean isOwned() {
+        return !released;
+    }
+
+    @Override
+    public synchronized void lostOwnership(Clipboard clipboard, Transferable contents) {
+        released = true;
+        pixels = null;
+        if (pooledPixels != null) pooledPixels.close();
+        pooledPixels = null;
+        pngSource = null;
+        pngCache = null;
+        decodedCache = null;
+    }
+
+    // ------------------------------------------------------------------
+    // Representations
+    // ------------------------------------------------------------------
+
+    private byte[] png() throws IOException {
+        if (pngSource != null) return pngSource;
+        if (pngCache != null) return pngCache;
+        byte[] png;
+        boolean quantize = decodable && PaletteQuantizer.isEnabled();
+        if (pixels != null && (!isWritten() || quantize)) {
+            png = ClipboardUtil.encodePng(pixels);
+        } else if (pngPath != null && !quantize && awaitWritten()) {
+            png = Files.readAllBytes(pngPath);
+        } else {
+            png = ClipboardUtil.encodePng(image());
+        }
+        if (png.length + cachedImageBytes() <= CACHE_CAP_BYTES) pngCache = png;
+        return png;
+    }
+
+    private BufferedImage image() throws IOException {
+        if (pixels != null) return pixels;
+        if (decodedCache != null) return decodedCache;
+        if (!decodable) throw new IOException("Screenshot too large to decode: " + pngPath);
+        BufferedImage image;
+        if (pngSource != null) {
+            image = ClipboardUtil.readImage(ByteBuffer.wrap(pngSource));
+        } else {
+            if (pngPath == null || !awaitWritten()) throw new IOException("Screenshot file not available: " + pngPath);
+            image = ClipboardUtil.readImage(pngPath);
+        }
+        if (image == null) throw new IOException("Failed to decode screenshot: " + pngPath);
+        long bytes = (long) image.getWidth() * image.getHeight() * 4;
+        if (bytes + (pngCache != null ? pngCache.length : 0) <= CACHE_CAP_BYTES) decodedCache = image;
+        return image;
+    }
+
+    private long cachedImageBytes() {
+        BufferedImage img = decodedCache;
+        return img == null ? 0 : (long) img.getWidth() * img.getHeight() * 4;
+    }
+
+    private boolean isWritten() {
+        return written == null || written.isDone();
+    }
+
+    /** Whether {@code pngPath} has been written successfully (without waiting for it). */
+    private boolean isOnDisk() {
+        if (written != null && written.state() != Future.State.SUCCESS) return false;
+        return Files.isRegularFile(pngPath);
+    }
+
+    private boolean awaitWritten() {
+        try {
+            if (written != null) written.get(ClipboardUtil.FILE_WRITE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            return Files.isRegularFile(pngPath);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static DataFlavor createPngFlavor() {
+        try {
+            return new DataFlavor("image/png; class=java.io.InputStream");
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+}
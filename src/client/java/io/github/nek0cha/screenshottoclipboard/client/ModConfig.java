@@ -20,8 +20,6 @@ public final class ModConfig {
 
     private static final Logger LOGGER = LoggerFactory.getLogger("ScreenshotToClipboard");
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
-    private static final Path CONFIG_PATH = FabricLoader.getInstance()
-            .getConfigDir().resolve("screenshottoclipboard.json");
 
     private static ModConfig instance;
 
@@ -32,6 +30,64 @@ public final class ModConfig {
     /** Show an in-game chat message when a screenshot is copied. Default: false. */
     public boolean showMessage = false;
 
+    /**
+     * Deflate level (0-9) for PNGs that the mod encodes itself for the clipboard.
+     * 0 = stored (fastest, largest), 1 = fastest compression. Default: 1.
+     */
+    public int pngCompressionLevel = 1;
+
+    /**
+     * Colours (2-256) of the palette (8-bit indexed) PNG that the mod encodes for the clipboard
+     * instead of truecolor: typically several times smaller, so pipes and pastes are faster.
+     * Screenshots whose palette would have an RMS error above {@link #paletteMaxError}
+     * (0-255 per channel) stay truecolor. 0 (or 1) = always truecolor. Default: 0, dithered, 6.
+     */
+    public int paletteColors = 0;
+    public boolean paletteDither = true;
+    public double paletteMaxError = 6;
+
+    /**
+     * Largest width / height (in pixels) and size (in megapixels) of the copied image.
+     * Larger screenshots are downscaled with an area-average filter; the saved file is
+     * left untouched. 0 = no limit. Default: 0.
+     */
+    public int maxClipboardWidth = 0;
+    public int maxClipboardHeight = 0;
+    public double maxClipboardMegapixels = 0;
+
+    /**
+     * Number of recent screenshots kept in memory (as PNG, off-heap) for {@code /sstoclip recopy},
+     * and the most memory they may use in total. The least recently copied one is dropped first.
+     * 0 = no history. Default: 5 screenshots, 64 MB.
+     */
+    public int historySize = 5;
+    public int historyBudgetMegabytes = 64;
+
+    /** What is put on the clipboard: the image, or a reference to the saved file. */
+    public enum ClipboardMode {
+        /** The screenshot's pixels (PNG / bitmap). */
+        IMAGE,
+        /** The saved file as a file list / {@code text/uri-list}; no pixels are read or converted. */
+        FILE,
+        /** {@code FILE} for screenshots of at least {@link #fileReferenceMegapixels}, {@code IMAGE} otherwise. */
+        AUTO
+    }
+
+    /** Default: IMAGE. */
+    public ClipboardMode clipboardMode = ClipboardMode.IMAGE;
+
+    /** Size (in megapixels) from which {@link ClipboardMode#AUTO} copies a file reference. Default: 32. */
+    public double fileReferenceMegapixels = 32;
+
+    /**
+     * Share one clipboard owner between game instances on this machine: the first instance
+     * to copy hosts a local socket, the others hand their screenshots to it. Default: false.
+     */
+    public boolean clipboardBroker = false;
+
+    /** Set for {@link #inMemory()} configs, which are never written to disk. */
+    private transient boolean inMemory;
+
     private ModConfig() {}
 
     public static ModConfig getInstance() {
@@ -39,9 +95,25 @@ public final class ModConfig {
         return instance;
     }
 
+    /**
+     * Installs a default config that is never loaded from or saved to disk, for headless
+     * tools (benchmarks, the stress harness) that run without a Fabric game directory.
+     */
+    static ModConfig inMemory() {
+        ModConfig cfg = new ModConfig();
+        cfg.inMemory = true;
+        instance = cfg;
+        return cfg;
+    }
+
+    private static Path configPath() {
+        return FabricLoader.getInstance().getConfigDir().resolve("screenshottoclipboard.json");
+    }
+
     private static ModConfig load() {
-        if (Files.exists(CONFIG_PATH)) {
-            try (Reader r = Files.newBufferedReader(CONFIG_PATH)) {
+        Path path = configPath();
+        if (Files.exists(path)) {
+            try (Reader r = Files.newBufferedReader(path)) {
                 ModConfig cfg = GSON.fromJson(r, ModConfig.class);
                 if (cfg != null) return cfg;
             } catch (IOException e) {
@@ -54,7 +126,8 @@ public final class ModConfig {
     }
 
     public void save() {
-        try (Writer w = Files.newBufferedWriter(CONFIG_PATH)) {
+        if (inMemory) return;
+        try (Writer w = Files.newBufferedWriter(configPath())) {
             GSON.toJson(this, w);
         } catch (IOException e) {
             LOGGER.warn("[ScreenshotToClipboard] Failed to save config", e);
@@ -8,6 +8,8 @@ import me.shedaniel.clothconfig2.api.ConfigEntryBuilder;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.text.Text;
 
+import java.util.Locale;
+
 /**
  * Registers a Cloth Config screen with ModMenu.
  * Only loaded when both ModMenu and Cloth Config are present at runtime.
@@ -40,6 +42,128 @@ public class ModMenuIntegration implements ModMenuApi {
                 .setSaveConsumer(v -> config.showMessage = v)
                 .build());
 
+        general.addEntry(eb
+                .startIntSlider(
+                        Text.translatable("screenshottoclipboard.config.png_compression_level"),
+                        config.pngCompressionLevel, PngEncoder.MIN_LEVEL, PngEncoder.MAX_LEVEL)
+                .setDefaultValue(1)
+                .setTooltip(Text.translatable("screenshottoclipboard.config.png_compression_level.tooltip"))
+                .setSaveConsumer(v -> config.pngCompressionLevel = v)
+                .build());
+
+        general.addEntry(eb
+                .startIntField(
+                        Text.translatable("screenshottoclipboard.config.palette_colors"),
+                        config.paletteColors)
+                .setDefaultValue(0)
+                .setMin(0)
+                .setMax(PaletteQuantizer.MAX_COLORS)
+                .setTooltip(Text.translatable("screenshottoclipboard.config.palette_colors.tooltip"))
+                // A one-colour palette is not a palette: 1 is saved as 0 (off), like isEnabled() reads it.
+                .setSaveConsumer(v -> config.paletteColors = v < PaletteQuantizer.MIN_COLORS ? 0 : v)
+                .build());
+
+        general.addEntry(eb
+                .startBooleanToggle(
+                        Text.translatable("screenshottoclipboard.config.palette_dither"),
+                        config.paletteDither)
+                .setDefaultValue(true)
+                .setTooltip(Text.translatable("screenshottoclipboard.config.palette_dither.tooltip"))
+                .setSaveConsumer(v -> config.paletteDither = v)
+                .build());
+
+        general.addEntry(eb
+                .startDoubleField(
+                        Text.translatable("screenshottoclipboard.config.palette_max_error"),
+                        config.paletteMaxError)
+                .setDefaultValue(6.0)
+                .setMin(0.0)
+                .setMax(255.0)
+                .setTooltip(Text.translatable("screenshottoclipboard.config.palette_max_error.tooltip"))
+                .setSaveConsumer(v -> config.paletteMaxError = v)
+                .build());
+
+        general.addEntry(eb
+                .startIntField(
+                        Text.translatable("screenshottoclipboard.config.max_clipboard_width"),
+                        config.maxClipboardWidth)
+                .setDefaultValue(0)
+                .setMin(0)
+                .setTooltip(Text.translatable("screenshottoclipboard.config.max_clipboard_width.tooltip"))
+                .setSaveConsumer(v -> config.maxClipboardWidth = v)
+                .build());
+
+        general.addEntry(eb
+                .startIntField(
+                        Text.translatable("screenshottoclipboard.config.max_clipboard_height"),
+                        config.maxClipboardHeight)
+                .setDefaultValue(0)
+                .setMin(0)
+                .setTooltip(Text.translatable("screenshottoclipboard.config.max_clipboard_height.tooltip"))
+                .setSaveConsumer(v -> config.maxClipboardHeight = v)
+                .build());
+
+        general.addEntry(eb
+                .startDoubleField(
+                        Text.translatable("screenshottoclipboard.config.max_clipboard_megapixels"),
+                        config.maxClipboardMegapixels)
+                .setDefaultValue(0.0)
+                .setMin(0.0)
+                .setTooltip(Text.translatable("screenshottoclipboard.config.max_clipboard_megapixels.tooltip"))
+                .setSaveConsumer(v -> config.maxClipboardMegapixels = v)
+                .build());
+
+        general.addEntry(eb
+                .startIntField(
+                        Text.translatable("screenshottoclipboard.config.history_size"),
+                        config.historySize)
+                .setDefaultValue(5)
+                .setMin(0)
+                .setTooltip(Text.translatable("screenshottoclipboard.config.history_size.tooltip"))
+                .setSaveConsumer(v -> config.historySize = v)
+                .build());
+
+        general.addEntry(eb
+                .startIntField(
+                        Text.translatable("screenshottoclipboard.config.history_budget_megabytes"),
+                        config.historyBudgetMegabytes)
+                .setDefaultValue(64)
+                .setMin(0)
+                .setTooltip(Text.translatable("screenshottoclipboard.config.history_budget_megabytes.tooltip"))
+                .setSaveConsumer(v -> config.historyBudgetMegabytes = v)
+                .build());
+
+        general.addEntry(eb
+                .startEnumSelector(
+                        Text.translatable("screenshottoclipboard.config.clipboard_mode"),
+                        ModConfig.ClipboardMode.class,
+                        config.clipboardMode != null ? config.clipboardMode : ModConfig.ClipboardMode.IMAGE)
+                .setDefaultValue(ModConfig.ClipboardMode.IMAGE)
+                .setEnumNameProvider(mode -> Text.translatable(
+                        "screenshottoclipboard.config.clipboard_mode." + mode.name().toLowerCase(Locale.ROOT)))
+                .setTooltip(Text.translatable("screenshottoclipboard.config.clipboard_mode.tooltip"))
+                .setSaveConsumer(v -> config.clipboardMode = v)
+                .build());
+
+        general.addEntry(eb
+                .startDoubleField(
+                        Text.translatable("screenshottoclipboard.config.file_reference_megapixels"),
+                        config.fileReferenceMegapixels)
+                .setDefaultValue(32.0)
+                .setMin(0.0)
+                .setTooltip(Text.translatable("screenshottoclipboard.config.file_reference_megapixels.tooltip"))
+                .setSaveConsumer(v -> config.fileReferenceMegapixels = v)
+                .build());
+
+        general.addEntry(eb
+                .startBooleanToggle(
+                        Text.translatable("screenshottoclipboard.config.clipboard_broker"),
+                        config.clipboardBroker)
+                .setDefaultValue(false)
+                .setTooltip(Text.translatable("screenshottoclipboard.config.clipboard_broker.tooltip"))
+                .setSaveConsumer(v -> config.clipboardBroker = v)
+                .build());
+
         return builder.build();
     }
 }
\ No newline at end of file
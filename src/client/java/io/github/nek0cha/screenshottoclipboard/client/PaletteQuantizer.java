@@ -0,0 +1,345 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Colour quantizer for palette PNGs ({@code paletteColors}).
+ *
+ * A sample of the pixels (a regular grid of at most {@link #MAX_SAMPLES}) is binned into a
+ * 5-bit-per-channel histogram. Median cut splits the occupied bins into the requested number
+ * of boxes, always the one with the largest squared error, at the weighted median of its
+ * widest channel; a few k-means rounds over the bins then move every entry to the mean of
+ * the colours it serves. The palette's RMS error is measured on the samples, so a screenshot
+ * that needs more colours is rejected before any full-size work.
+ *
+ * {@link #map} assigns pixels in parallel tiles of rows through a shared 6-bit nearest-entry
+ * cache. With Floyd-Steinberg dithering it runs as one serial pass instead: the error diffused
+ * into the next row must reach every row, or each tile boundary shows as a seam.
+ */
+final class PaletteQuantizer {
+
+    static final int MIN_COLORS = 2;
+    static final int MAX_COLORS = 256;
+
+    private static final int MAX_SAMPLES = 1 << 18;
+    /** Samples per fork-join task when measuring the error. */
+    private static final int SAMPLE_TILE = 1 << 14;
+    private static final int KMEANS_ROUNDS = 3;
+    /** Rows per fork-join task in {@link #map} (and per sampling task). */
+    private static final int ROWS_PER_TILE = 64;
+    /** Images at least this large (in pixels) are mapped in parallel. */
+    private static final long PARALLEL_THRESHOLD = 1L << 18;
+
+    private PaletteQuantizer() {}
+
+    /** True if {@code paletteColors} in {@link ModConfig} asks for palette PNGs; 1 colour counts as off. */
+    static boolean isEnabled() {
+        return ModConfig.getInstance().paletteColors >= MIN_COLORS;
+    }
+
+    /** A palette of {@code 0xRRGGBB} entries and its RMS error (0-255 per channel) on the sampled pixels. */
+    static final class Palette {
+        private final int[] rgb;
+        private final double rmsError;
+        /** Entry + 1 per 6-bit colour, 0 = not looked up yet. Filled lazily; racing writes store the same value. */
+        private final int[] nearest = new int[1 << 18];
+
+        private Palette(int[] rgb, int[] samples) {
+            this.rgb = rgb;
+            long sse = IntStream.range(0, (samples.length + SAMPLE_TILE - 1) / SAMPLE_TILE).parallel().mapToLong(t -> {
+                long sum = 0;
+                for (int i = t * SAMPLE_TILE, end = Math.min(samples.length, i + SAMPLE_TILE); i < end; i++) {
+                    int px = samples[i];
+                    int e = rgb[index(px >> 16 & 0xFF, px >> 8 & 0xFF, px & 0xFF)];
+                    int dr = (px >> 16 & 0xFF) - (e >> 16 & 0xFF);
+                    int dg = (px >> 8 & 0xFF) - (e >> 8 & 0xFF);
+                    int db = (px & 0xFF) - (e & 0xFF);
+                    sum += dr * dr + dg * dg + db * db;
+                }
+                return sum;
+            }).sum();
+            this.rmsError = samples.length == 0 ? 0 : Math.sqrt(sse / (3.0 * samples.length));
+        }
+
+        int[] rgb() { return rgb; }
+        int size() { return rgb.length; }
+        double rmsError() { return rmsError; }
+
+        /** Entry closest to the colour (looked up at 6 bits per channel). */
+        int index(int r, int g, int b) {
+            int key = (r >> 2) << 12 | (g >> 2) << 6 | (b >> 2);
+            int e = nearest[key];
+            if (e == 0) {
+                e = closest(rgb, (r & ~3) | 2, (g & ~3) | 2, (b & ~3) | 2) + 1;
+                nearest[key] = e;
+            }
+            return e - 1;
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Palette
+    // ------------------------------------------------------------------
+
+    /** Builds a palette of at most {@code colors} entries for {@code image}. */
+    static Palette palette(BufferedImage image, int colors) {
+        int n = Math.max(MIN_COLORS, Math.min(MAX_COLORS, colors));
+        int[] samples = sample(image);
+        Histogram hist = new Histogram(samples);
+        int[] rgb = medianCut(hist, n);
+        for (int round = 0; round < KMEANS_ROUNDS; round++) {
+            if (!kMeans(hist, rgb)) break;
+        }
+        return new Palette(rgb, samples);
+    }
+
+    /** Every {@code step}-th pixel of every {@code step}-th row, as {@code 0xRRGGBB}. */
+    private static int[] sample(BufferedImage image) {
+        int width = image.getWidth(), height = image.getHeight();
+        int step = (int) Math.max(1, Math.ceil(Math.sqrt((double) width * height / MAX_SAMPLES)));
+        int cols = (width + step - 1) / step, rows = (height + step - 1) / step;
+        int[] samples = new int[cols * rows];
+        RowReader reader = RowReader.of(image);
+        IntStream tasks = IntStream.range(0, (rows + ROWS_PER_TILE - 1) / ROWS_PER_TILE);
+        if ((long) width * rows >= PARALLEL_THRESHOLD) tasks = tasks.parallel();
+        tasks.forEach(t -> {
+            byte[] row = new byte[width * 3];
+            for (int r = t * ROWS_PER_TILE, end = Math.min(rows, r + ROWS_PER_TILE); r < end; r++) {
+                reader.read(r * step, row, 0, false);
+                for (int c = 0, s = 0, o = r * cols; c < cols; c++, s += 3 * step) {
+                    samples[o + c] = (row[s] & 0xFF) << 16 | (row[s + 1] & 0xFF) << 8 | (row[s + 2] & 0xFF);
+                }
+            }
+        });
+        return samples;
+    }
+
+    /** Occupied 5-bit bins with their sample counts and colour sums. */
+    private static final class Histogram {
+        final int[] count;
+        final long[] sumR, sumG, sumB;
+
+        Histogram(int[] samples) {
+            int[] c = new int[1 << 15];
+            long[] r = new long[1 << 15], g = new long[1 << 15], b = new long[1 << 15];
+            for (int px : samples) {
+                int bin = (px >> 19 & 0x1F) << 10 | (px >> 11 & 0x1F) << 5 | (px >> 3 & 0x1F);
+                c[bin]++;
+                r[bin] += px >> 16 & 0xFF;
+                g[bin] += px >> 8 & 0xFF;
+                b[bin] += px & 0xFF;
+            }
+            int occupied = 0;
+            for (int v : c) if (v > 0) occupied++;
+            count = new int[occupied];
+            sumR = new long[occupied];
+            sumG = new long[occupied];
+            sumB = new long[occupied];
+            for (int bin = 0, i = 0; bin < c.length; bin++) {
+                if (c[bin] == 0) continue;
+                count[i] = c[bin];
+                sumR[i] = r[bin];
+                sumG[i] = g[bin];
+                sumB[i] = b[bin];
+                i++;
+            }
+        }
+
+        int size() { return count.length; }
+
+        /** Mean of channel {@code ch} (0 = R, 1 = G, 2 = B) of occupied bin {@code i}. */
+        double mean(int i, int ch) {
+            return (double) (ch == 0 ? sumR[i] : ch == 1 ? sumG[i] : sumB[i]) / count[i];
+        }
+    }
+
+    /** A run {@code [from, to)} of {@code order} (histogram bin positions). */
+    private record Box(int from, int to, long weight, int channel, double error) {}
+
+    private static int[] medianCut(Histogram hist, int colors) {
+        int[] order = new int[hist.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Box[] boxes = new Box[Math.min(colors, Math.max(1, order.length))];
+        int count = 0;
+        if (order.length > 0) boxes[count++] = box(hist, order, 0, order.length);
+        while (count < boxes.length) {
+            int worst = -1;
+            for (int i = 0; i < count; i++) {
+                if (boxes[i].to() - boxes[i].from() > 1 && (worst < 0 || boxes[i].error() > boxes[worst].error())) {
+                    worst = i;
+                }
+            }
+            if (worst < 0) break;                                    // every box is a single bin
+            Box b = boxes[worst];
+            sortByChannel(hist, order, b.from(), b.to(), b.channel());
+            int split = b.from() + 1;
+            long half = b.weight() / 2, seen = hist.count[order[b.from()]];
+            while (split < b.to() - 1 && seen + hist.count[order[split]] <= half) seen += hist.count[order[split++]];
+            boxes[worst] = box(hist, order, b.from(), split);
+            boxes[count++] = box(hist, order, split, b.to());
+        }
+        int[] rgb = new int[Math.max(1, count)];
+        for (int i = 0; i < count; i++) {
+            long r = 0, g = 0, bl = 0, w = 0;
+            for (int k = boxes[i].from(); k < boxes[i].to(); k++) {
+                int bin = order[k];
+                r += hist.sumR[bin];
+                g += hist.sumG[bin];
+                bl += hist.sumB[bin];
+                w += hist.count[bin];
+            }
+            rgb[i] = rgb(r, g, bl, w);
+        }
+        return rgb;
+    }
+
+    /** Weight, widest channel and squared error (around the weighted mean) of a run of bins. */
+    private static Box box(Histogram hist, int[] order, int from, int to) {
+        double[] sum = new double[3], sq = new double[3];
+        long weight = 0;
+        for (int k = from; k < to; k++) {
+            int bin = order[k];
+            int w = hist.count[bin];
+            weight += w;
+            for (int ch = 0; ch < 3; ch++) {
+                double m = hist.mean(bin, ch);
+                sum[ch] += w * m;
+                sq[ch] += w * m * m;
+            }
+        }
+        int channel = 0;
+        double error = 0, widest = -1;
+        for (int ch = 0; ch < 3; ch++) {
+            double var = sq[ch] - sum[ch] * sum[ch] / weight;
+            error += var;
+            if (var > widest) {
+                widest = var;
+                channel = ch;
+            }
+        }
+        return new Box(from, to, weight, channel, error);
+    }
+
+    private static void sortByChannel(Histogram hist, int[] order, int from, int to, int channel) {
+        long[] keys = new long[to - from];
+        for (int k = from; k < to; k++) {
+            keys[k - from] = (long) (hist.mean(order[k], channel) * 256) << 32 | order[k];
+        }
+        Arrays.sort(keys);
+        for (int k = from; k < to; k++) order[k] = (int) keys[k - from];
+    }
+
+    /** One k-means round over the bins; {@code false} once no entry moves. */
+    private static boolean kMeans(Histogram hist, int[] rgb) {
+        int n = hist.size();
+        int[] assign = new int[n];
+        IntStream.range(0, n).parallel().forEach(i -> assign[i] = closest(rgb,
+                (int) Math.round(hist.mean(i, 0)), (int) Math.round(hist.mean(i, 1)), (int) Math.round(hist.mean(i, 2))));
+        long[] r = new long[rgb.length], g = new long[rgb.length], b = new long[rgb.length], w = new long[rgb.length];
+        for (int i = 0; i < n; i++) {
+            int e = assign[i];
+            r[e] += hist.sumR[i];
+            g[e] += hist.sumG[i];
+            b[e] += hist.sumB[i];
+            w[e] += hist.count[i];
+        }
+        boolean moved = false;
+        for (int e = 0; e < rgb.length; e++) {
+            if (w[e] == 0) continue;                                  // unused entry keeps its colour
+            int c = rgb(r[e], g[e], b[e], w[e]);
+            moved |= c != rgb[e];
+            rgb[e] = c;
+        }
+        return moved;
+    }
+
+    // ------------------------------------------------------------------
+    // Mapping
+    // ------------------------------------------------------------------
+
+    /** One palette index per pixel, row by row. */
+    static byte[] map(BufferedImage image, Palette palette, boolean dither) {
+        int width = image.getWidth(), height = image.getHeight();
+        byte[] indices = new byte[width * height];
+        RowReader reader = RowReader.of(image);
+        if (dither) {
+            mapRows(reader, width, 0, height, palette, true, indices);
+            return indices;
+        }
+        IntStream tasks = IntStream.range(0, (height + ROWS_PER_TILE - 1) / ROWS_PER_TILE);
+        if ((long) width * height >= PARALLEL_THRESHOLD) tasks = tasks.parallel();
+        tasks.forEach(t -> mapRows(reader, width, t * ROWS_PER_TILE,
+                Math.min(height, (t + 1) * ROWS_PER_TILE), palette, false, indices));
+        return indices;
+    }
+
+    private static void mapRows(RowReader reader, int width, int y0, int y1, Palette palette, boolean dither,
+                                byte[] indices) {
+        byte[] row = new byte[width * 3];
+        int[] rgb = palette.rgb();
+        if (!dither) {
+            for (int y = y0; y < y1; y++) {
+                reader.read(y, row, 0, false);
+                for (int x = 0, s = 0, o = y * width; x < width; x++, s += 3) {
+                    indices[o + x] = (byte) palette.index(row[s] & 0xFF, row[s + 1] & 0xFF, row[s + 2] & 0xFF);
+                }
+            }
+            return;
+        }
+        // Floyd-Steinberg; errors in 1/16 units, padded by one pixel on each side.
+        int[] cur = new int[(width + 2) * 3], next = new int[(width + 2) * 3];
+        for (int y = y0; y < y1; y++) {
+            reader.read(y, row, 0, false);
+            Arrays.fill(next, 0);
+            for (int x = 0, s = 0, o = y * width; x < width; x++, s += 3) {
+                int p = (x + 1) * 3;
+                int r = clamp((row[s] & 0xFF) + cur[p] / 16);
+                int g = clamp((row[s + 1] & 0xFF) + cur[p + 1] / 16);
+                int b = clamp((row[s + 2] & 0xFF) + cur[p + 2] / 16);
+                int e = palette.index(r, g, b);
+                indices[o + x] = (byte) e;
+                int c = rgb[e];
+                diffuse(cur, next, p, r - (c >> 16 & 0xFF));
+                diffuse(cur, next, p + 1, g - (c >> 8 & 0xFF));
+                diffuse(cur, next, p + 2, b - (c & 0xFF));
+            }
+            int[] t = cur; cur = next; next = t;
+        }
+    }
+
+    private static void diffuse(int[] cur, int[] next, int p, int err) {
+        cur[p + 3]  += err * 7;
+        next[p - 3] += err * 3;
+        next[p]     += err * 5;
+        next[p + 3] += err;
+    }
+
+    // ------------------------------------------------------------------
+    // Helpers
+    // ------------------------------------------------------------------
+
+    private static int closest(int[] rgb, int r, int g, int b) {
+        int best = 0, bestDist = Integer.MAX_VALUE;
+        for (int e = 0; e < rgb.length; e++) {
+            int c = rgb[e];
+            int dr = r - (c >> 16 & 0xFF), dg = g - (c >> 8 & 0xFF), db = b - (c & 0xFF);
+            int d = dr * dr + dg * dg + db * db;
+            if (d < bestDist) {
+                bestDist = d;
+                best = e;
+            }
+        }
+        return best;
+    }
+
+    private static int rgb(long r, long g, long b, long weight) {
+        return (int) ((r + weight / 2) / weight) << 16 | (int) ((g + weight / 2) / weight) << 8
+                | (int) ((b + weight / 2) / weight);
+    }
+
+    private static int clamp(int v) {
+        return v < 0 ? 0 : Math.min(255, v);
+    }
+}
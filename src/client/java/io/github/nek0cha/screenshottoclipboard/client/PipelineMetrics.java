@@ -0,0 +1,182 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-stage latency of clipboard jobs: a {@link LatencyHistogram} per stage (and per
+ * backend / converter where relevant) plus a {@link ClipboardStageEvent} for JFR.
+ *
+ * <pre>{@code
+ * try (PipelineMetrics.Span span = PipelineMetrics.start(Stage.DECODE)) {
+ *     image = ImageIO.read(file);
+ *     span.success(image != null);
+ * }
+ * }</pre>
+ */
+public final class PipelineMetrics {
+
+    public enum Stage {
+        QUEUE_WAIT("queue_wait"),
+        FILE_WAIT("file_wait"),
+        DECODE("decode"),
+        CONVERT("convert"),
+        BACKEND("backend"),
+        CALLBACK("callback");
+
+        final String id;
+        Stage(String id) { this.id = id; }
+    }
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final double[] PERCENTILES = {50, 90, 99};
+    private static final Map<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    /** Repeats skipped because the clipboard already held them / served from the history. */
+    private static final AtomicLong DEDUPE_OWNED = new AtomicLong();
+    private static final AtomicLong DEDUPE_HISTORY = new AtomicLong();
+
+    private PipelineMetrics() {}
+
+    /** Counts a repeated screenshot: {@code owned} if it was skipped, else re-copied from the history. */
+    static void dedupe(boolean owned) {
+        (owned ? DEDUPE_OWNED : DEDUPE_HISTORY).incrementAndGet();
+    }
+
+    public static Span start(Stage stage) {
+        return new Span(stage, null);
+    }
+
+    public static Span start(Stage stage, String backend) {
+        return new Span(stage, backend);
+    }
+
+    /** A running stage. Closing it records the elapsed time; it is not thread-confined. */
+    public static final class Span implements AutoCloseable {
+        private final Stage stage;
+        private final String backend;
+        private final long startNanos = System.nanoTime();
+        private final ClipboardStageEvent event = new ClipboardStageEvent();
+        private boolean success = true;
+        private boolean closed;
+
+        private Span(Stage stage, String backend) {
+            this.stage = stage;
+            this.backend = backend;
+            event.begin();
+        }
+
+        /** Marks the outcome; spans count as successful unless told otherwise. */
+        public Span success(boolean ok) {
+            this.success = ok;
+            return this;
+        }
+
+        /** Convenience for {@code return span.result(copy())}. */
+        public boolean result(boolean ok) {
+            success(ok);
+            return ok;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            histogram(key(stage, backend)).recordNanos(System.nanoTime() - startNanos);
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage.id;
+                event.backend = backend;
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Reporting
+    // ------------------------------------------------------------------
+
+    /** One line per histogram: {@code stage[:backend] n=… p50=… p90=… p99=… max=…} (ms). */
+    public static List<String> summaryLines() {
+        List<String> lines = new ArrayList<>();
+        new TreeMap<>(HISTOGRAMS).forEach((key, h) -> {
+            if (h.count() == 0) return;
+            lines.add(String.format("%s n=%d p50=%.1f p90=%.1f p99=%.1f max=%.1f", key, h.count(),
+                    h.percentileMillis(50), h.percentileMillis(90), h.percentileMillis(99), h.maxMillis()));
+        });
+        lines.addAll(ClipboardBackends.summaryLines());
+        if (DEDUPE_OWNED.get() + DEDUPE_HISTORY.get() > 0) {
+            lines.add(String.format("dedupe skipped=%d from-history=%d", DEDUPE_OWNED.get(), DEDUPE_HISTORY.get()));
+        }
+        BufferPool pool = BufferPool.INSTANCE;
+        if (!lines.isEmpty() || pool.hits() + pool.misses() > 0) {
+            lines.add(String.format("buffer-pool hits=%d misses=%d retained=%.1fMiB",
+                    pool.hits(), pool.misses(), pool.retainedBytes() / (1024.0 * 1024.0)));
+        }
+        return lines;
+    }
+
+    public static String toJson() {
+        JsonArray stages = new JsonArray();
+        new TreeMap<>(HISTOGRAMS).forEach((key, h) -> {
+            JsonObject o = new JsonObject();
+            int colon = key.indexOf(':');
+            o.addProperty("stage", colon < 0 ? key : key.substring(0, colon));
+            if (colon >= 0) o.addProperty("backend", key.substring(colon + 1));
+            o.addProperty("count", h.count());
+            o.addProperty("meanMs", h.meanMillis());
+            for (double p : PERCENTILES) o.addProperty("p" + (int) p + "Ms", h.percentileMillis(p));
+            o.addProperty("maxMs", h.maxMillis());
+            stages.add(o);
+        });
+        JsonObject root = new JsonObject();
+        root.addProperty("timestamp", System.currentTimeMillis());
+        root.add("stages", stages);
+        root.add("backends", ClipboardBackends.toJson());
+        JsonObject pool = new JsonObject();
+        pool.addProperty("hits", BufferPool.INSTANCE.hits());
+        pool.addProperty("misses", BufferPool.INSTANCE.misses());
+        pool.addProperty("retainedBytes", BufferPool.INSTANCE.retainedBytes());
+        root.add("bufferPool", pool);
+        JsonObject dedupe = new JsonObject();
+        dedupe.addProperty("skipped", DEDUPE_OWNED.get());
+        dedupe.addProperty("fromHistory", DEDUPE_HISTORY.get());
+        root.add("dedupe", dedupe);
+        return GSON.toJson(root);
+    }
+
+    public static void dumpJson(Path path) throws IOException {
+        try (Writer w = Files.newBufferedWriter(path)) {
+            w.write(toJson());
+        }
+    }
+
+    public static void reset() {
+        HISTOGRAMS.values().forEach(LatencyHistogram::reset);
+        BufferPool.INSTANCE.resetCounters();
+        DEDUPE_OWNED.set(0);
+        DEDUPE_HISTORY.set(0);
+        ClipboardBackends.reset();
+    }
+
+    private static LatencyHistogram histogram(String key) {
+        return HISTOGRAMS.computeIfAbsent(key, k -> new LatencyHistogram());
+    }
+
+    private static String key(Stage stage, String backend) {
+        return backend == null ? stage.id : stage.id + ":" + backend;
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pixel-format conversion kernels shared by {@link RowReader} and {@link PngRowDecoder}, and
+ * through them by the CF_DIB, PNG, hash and downscale stages: runs of packed-int or
+ * interleaved-byte pixels to the packed 8-bit RGB / BGR triplets those stages consume. The
+ * screenshot snapshot swaps NativeImage's {@code 0xAABBGGRR} ints to ARGB through
+ * {@link #abgrToArgb()}.
+ *
+ * Kernels are looked up once per image layout. When the JVM runs with
+ * {@code --add-modules jdk.incubator.vector} and the CPU has SIMD registers, they come from
+ * {@code VectorPixelKernels} (one byte shuffle per register of pixels); otherwise, or for
+ * layouts without a vector kernel, from the scalar loops here. Both produce identical bytes.
+ */
+final class PixelKernels {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("ScreenshotToClipboard");
+
+    /** Converts {@code pixels} ints at {@code srcOff} to triplets at {@code dstOff}. */
+    @FunctionalInterface
+    interface IntKernel {
+        void convert(int[] src, int srcOff, byte[] dst, int dstOff, int pixels);
+    }
+
+    /** Converts {@code pixels} interleaved pixels starting at byte {@code srcOff} to triplets at {@code dstOff}. */
+    @FunctionalInterface
+    interface ByteKernel {
+        void convert(byte[] src, int srcOff, byte[] dst, int dstOff, int pixels);
+    }
+
+    /** Converts {@code pixels} ints at {@code srcOff} to ints at {@code dstOff}, in place if both name the same run. */
+    @FunctionalInterface
+    interface IntSwapKernel {
+        void convert(int[] src, int srcOff, int[] dst, int dstOff, int pixels);
+    }
+
+    /** A kernel implementation; {@code null} from a factory means "use the scalar kernel". */
+    interface Backend {
+        String name();
+
+        IntKernel packed(boolean bgr);
+
+        ByteKernel interleaved(int pixelStride, int rOff, int gOff, int bOff, boolean bgr);
+
+        IntSwapKernel abgrToArgb();
+    }
+
+    static final Backend SCALAR = new Scalar();
+    private static final Backend VECTOR = loadVector();
+
+    private PixelKernels() {}
+
+    /** Kernel for {@code 0x??RRGGBB} ints (TYPE_INT_RGB / TYPE_INT_ARGB; alpha is dropped). */
+    static IntKernel packed(boolean bgr) {
+        IntKernel k = VECTOR != null ? VECTOR.packed(bgr) : null;
+        return k != null ? k : SCALAR.packed(bgr);
+    }
+
+    /**
+     * Kernel for interleaved bytes with {@code pixelStride} bytes per pixel and the colour
+     * samples at the given offsets (e.g. PNG RGBA: 4, 0, 1, 2; TYPE_3BYTE_BGR: 3, 2, 1, 0).
+     */
+    static ByteKernel interleaved(int pixelStride, int rOff, int gOff, int bOff, boolean bgr) {
+        ByteKernel k = VECTOR != null ? VECTOR.interleaved(pixelStride, rOff, gOff, bOff, bgr) : null;
+        return k != null ? k : SCALAR.interleaved(pixelStride, rOff, gOff, bOff, bgr);
+    }
+
+    /** Kernel for NativeImage's {@code 0xAABBGGRR} ints (RGBA bytes, little-endian) to {@code 0xAARRGGBB}. */
+    static IntSwapKernel abgrToArgb() {
+        IntSwapKernel k = VECTOR != null ? VECTOR.abgrToArgb() : null;
+        return k != null ? k : SCALAR.abgrToArgb();
+    }
+
+    /** The vector backend, or {@code null} if it is not available in this JVM. */
+    static Backend vector() {
+        return VECTOR;
+    }
+
+    /** {@code "vector (256-bit)"} or {@code "scalar"}, for logs and benchmarks. */
+    static String implementation() {
+        return VECTOR != null ? VECTOR.name() : SCALAR.name();
+    }
+
+    private static Backend loadVector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+        try {
+            Backend backend = (Backend) Class.forName(PixelKernels.class.getPackageName() + ".VectorPixelKernels")
+                    .getDeclaredConstructor().newInstance();
+            if (backend.packed(true) == null) return null;     // no usable SIMD width
+            LOGGER.debug("[ScreenshotToClipboard] Pixel conversion kernels: {}", backend.name());
+            return backend;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            LOGGER.debug("[ScreenshotToClipboard] Vector pixel kernels unavailable", e);
+            return null;
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Scalar kernels
+    // ------------------------------------------------------------------
+
+    private static final class Scalar implements Backend {
+        @Override
+        public String name() {
+            return "scalar";
+        }
+
+        @Override
+        public IntKernel packed(boolean bgr) {
+            int first = bgr ? 0 : 2, last = bgr ? 2 : 0;
+            return (src, srcOff, dst, dstOff, pixels) -> {
+                for (int x = 0, o = dstOff; x < pixels; x++, o += 3) {
+                    int px = src[srcOff + x];
+                    dst[o + first] = (byte)  px;          // B
+                    dst[o + 1]     = (byte) (px >> 8);    // G
+                    dst[o + last]  = (byte) (px >> 16);   // R
+                }
+            };
+        }
+
+        @Override
+        public ByteKernel interleaved(int pixelStride, int rOff, int gOff, int bOff, boolean bgr) {
+            int first = bgr ? bOff : rOff, last = bgr ? rOff : bOff;
+            if (pixelStride == 3 && first == 0 && gOff == 1 && last == 2) {
+                // Already in the requested order.
+                return (src, srcOff, dst, dstOff, pixels) -> System.arraycopy(src, srcOff, dst, dstOff, pixels * 3);
+            }
+            return (src, srcOff, dst, dstOff, pixels) -> {
+                for (int x = 0, s = srcOff, o = dstOff; x < pixels; x++, s += pixelStride, o += 3) {
+                    dst[o]     = src[s + first];
+                    dst[o + 1] = src[s + gOff];
+                    dst[o + 2] = src[s + last];
+                }
+            };
+        }
+
+        @Override
+        public IntSwapKernel abgrToArgb() {
+            // AABBGGRR -> RRGGBBAA -> AARRGGBB; both are intrinsics the JIT vectorizes, unlike masks.
+            return (src, srcOff, dst, dstOff, pixels) -> {
+                for (int x = 0; x < pixels; x++) {
+                    dst[dstOff + x] = Integer.rotateRight(Integer.reverseBytes(src[srcOff + x]), 8);
+                }
+            };
+        }
+    }
+}
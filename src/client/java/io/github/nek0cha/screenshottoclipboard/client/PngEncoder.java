@@ -0,0 +1,308 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Parallel PNG encoder for clipboard payloads (8-bit truecolor without alpha, or 8-bit
+ * indexed for {@link PaletteQuantizer} output).
+ *
+ * Rows are split into stripes that are filtered and deflated independently on
+ * the common fork-join pool, pigz-style: each stripe is primed with the last
+ * 32 KiB of the previous stripe as its dictionary and ends with a sync flush, so
+ * the concatenated output is one valid zlib stream. Adler-32 values are combined
+ * per stripe. Level 0 emits stored blocks with no filtering (lowest latency); indexed
+ * rows are never filtered, as the PNG spec recommends for palette images.
+ * The output size is known once all stripes are done, so the file is written in one
+ * pass into an exactly sized array or a {@link BufferPool} lease.
+ */
+final class PngEncoder {
+
+    static final int MIN_LEVEL = Deflater.NO_COMPRESSION;
+    static final int MAX_LEVEL = Deflater.BEST_COMPRESSION;
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int DICT_SIZE = 32 * 1024;
+    /** Minimum uncompressed bytes per stripe; smaller stripes cost more ratio than they gain. */
+    private static final int MIN_STRIPE_BYTES = 256 * 1024;
+
+    private static final int FILTER_NONE = 0, FILTER_SUB = 1, FILTER_UP = 2, FILTER_PAETH = 4;
+    private static final byte COLOUR_TRUECOLOR = 2, COLOUR_INDEXED = 3;
+
+    /** Writes {@code dst.length} bytes of row {@code y}: RGB triplets or palette indices. */
+    @FunctionalInterface
+    private interface Rows {
+        void read(int y, byte[] dst);
+    }
+
+    private PngEncoder() {}
+
+    static byte[] encode(BufferedImage image, int level) {
+        return encode(image, level, byte[]::new, ByteBuffer::wrap);
+    }
+
+    /** Same as {@link #encode(BufferedImage, int)}, into a pooled off-heap buffer. */
+    static BufferPool.Lease encodePooled(BufferedImage image, int level) {
+        return encode(image, level, BufferPool.INSTANCE::acquire, lease -> lease.buffer().duplicate());
+    }
+
+    private static <T> T encode(BufferedImage image, int level, IntFunction<T> alloc, Function<T, ByteBuffer> view) {
+        RowReader reader = RowReader.of(image);
+        return encode(image.getWidth(), image.getHeight(), 3, COLOUR_TRUECOLOR, null,
+                (y, dst) -> reader.read(y, dst, 0, false), level, alloc, view);
+    }
+
+    /** 8-bit indexed PNG of {@code indices} (one per pixel, row by row) into {@code palette} ({@code 0xRRGGBB}). */
+    static byte[] encodeIndexed(int width, int height, byte[] indices, int[] palette, int level) {
+        return encodeIndexed(width, height, indices, palette, level, byte[]::new, ByteBuffer::wrap);
+    }
+
+    /** Same as {@link #encodeIndexed(int, int, byte[], int[], int)}, into a pooled off-heap buffer. */
+    static BufferPool.Lease encodeIndexedPooled(int width, int height, byte[] indices, int[] palette, int level) {
+        return encodeIndexed(width, height, indices, palette, level,
+                BufferPool.INSTANCE::acquire, lease -> lease.buffer().duplicate());
+    }
+
+    private static <T> T encodeIndexed(int width, int height, byte[] indices, int[] palette, int level,
+                                       IntFunction<T> alloc, Function<T, ByteBuffer> view) {
+        byte[] plte = new byte[palette.length * 3];
+        for (int i = 0; i < palette.length; i++) {
+            plte[3 * i]     = (byte) (palette[i] >> 16);
+            plte[3 * i + 1] = (byte) (palette[i] >> 8);
+            plte[3 * i + 2] = (byte)  palette[i];
+        }
+        return encode(width, height, 1, COLOUR_INDEXED, plte,
+                (y, dst) -> System.arraycopy(indices, y * width, dst, 0, width), level, alloc, view);
+    }
+
+    private static <T> T encode(int width, int height, int bytesPerPixel, byte colourType, byte[] plte, Rows rows,
+                                int level, IntFunction<T> alloc, Function<T, ByteBuffer> view) {
+        int lvl = Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level));
+        int filterLevel = plte != null ? 0 : lvl;
+        int rowBytes = width * bytesPerPixel;
+        int lineBytes = rowBytes + 1;                 // filter type byte + pixels
+
+        int threads = ForkJoinPool.getCommonPoolParallelism();
+        long total = (long) lineBytes * height;
+        int stripes = (int) Math.max(1, Math.min(threads * 2L, total / MIN_STRIPE_BYTES));
+        int rowsPerStripe = (height + stripes - 1) / stripes;
+        stripes = (height + rowsPerStripe - 1) / rowsPerStripe;
+
+        List<CompletableFuture<Stripe>> parts = new ArrayList<>(stripes);
+        for (int i = 0; i < stripes; i++) {
+            int start = i * rowsPerStripe;
+            int end = Math.min(height, start + rowsPerStripe);
+            boolean last = i == stripes - 1;
+            parts.add(CompletableFuture.supplyAsync(
+                    () -> encodeStripe(rows, rowBytes, bytesPerPixel, start, end, filterLevel, lvl, last),
+                    ForkJoinPool.commonPool()));
+        }
+
+        List<Stripe> done = new ArrayList<>(stripes);
+        long size = SIGNATURE.length + (CHUNK_OVERHEAD + 13) + (CHUNK_OVERHEAD + 2)
+                + (CHUNK_OVERHEAD + 4) + CHUNK_OVERHEAD;                   // IHDR, zlib header, Adler-32, IEND
+        if (plte != null) size += CHUNK_OVERHEAD + plte.length;
+        for (CompletableFuture<Stripe> f : parts) {
+            Stripe s = f.join();
+            done.add(s);
+            if (s.length > 0) size += CHUNK_OVERHEAD + s.length;
+        }
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("PNG too large: " + size + " bytes");
+
+        T result = alloc.apply((int) size);
+        ByteBuffer out = view.apply(result);
+        out.put(SIGNATURE);
+        byte[] ihdr = new byte[13];
+        putInt(ihdr, 0, width);
+        putInt(ihdr, 4, height);
+        ihdr[8]  = 8;   // bit depth
+        ihdr[9]  = colourType;
+        ihdr[10] = 0;   // deflate
+        ihdr[11] = 0;   // adaptive filtering
+        ihdr[12] = 0;   // no interlace
+        writeChunk(out, "IHDR", ihdr, 0, ihdr.length);
+        if (plte != null) writeChunk(out, "PLTE", plte, 0, plte.length);
+
+        // zlib header (CMF/FLG) for a 32 KiB window; FLEVEL is informational only.
+        int flevel = lvl <= 1 ? 0 : lvl <= 5 ? 1 : lvl == 6 ? 2 : 3;
+        int cmf = 0x78;
+        int flg = flevel << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        byte[] zhead = {(byte) cmf, (byte) flg};
+        writeChunk(out, "IDAT", zhead, 0, zhead.length);
+
+        long adler = 1;
+        for (Stripe s : done) {
+            if (s.length > 0) writeChunk(out, "IDAT", s.data, 0, s.length);
+            adler = combineAdler32(adler, s.adler, s.rawLength);
+        }
+        byte[] trailer = new byte[4];
+        putInt(trailer, 0, (int) adler);
+        writeChunk(out, "IDAT", trailer, 0, trailer.length);
+        writeChunk(out, "IEND", new byte[0], 0, 0);
+        return result;
+    }
+
+    // ------------------------------------------------------------------
+    // Stripes
+    // ------------------------------------------------------------------
+
+    private record Stripe(byte[] data, int length, long adler, long rawLength) {}
+
+    private static Stripe encodeStripe(Rows rows, int rowBytes, int bytesPerPixel, int start, int end,
+                                       int filterLevel, int level, boolean last) {
+        int lineBytes = rowBytes + 1;
+        byte[] prev = new byte[rowBytes];
+        byte[] cur  = new byte[rowBytes];
+
+        // Re-filter the rows that precede this stripe to rebuild the previous stripe's tail as the dictionary.
+        int dictRows = start == 0 ? 0 : Math.min(start, (DICT_SIZE + lineBytes - 1) / lineBytes);
+        int first = start - dictRows;
+        if (first > 0) rows.read(first - 1, prev);
+
+        byte[] filtered = new byte[(end - first) * lineBytes];
+        for (int y = first; y < end; y++) {
+            rows.read(y, cur);
+            filterRow(cur, y > 0 ? prev : null, filtered, (y - first) * lineBytes, filterLevel, bytesPerPixel);
+            byte[] t = prev; prev = cur; cur = t;
+        }
+
+        int dataOff = dictRows * lineBytes;
+        int dataLen = filtered.length - dataOff;
+        Adler32 a = new Adler32();
+        a.update(filtered, dataOff, dataLen);
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dataOff > 0) {
+                int dictLen = Math.min(DICT_SIZE, dataOff);
+                deflater.setDictionary(filtered, dataOff - dictLen, dictLen);
+            }
+            deflater.setInput(filtered, dataOff, dataLen);
+            if (last) deflater.finish();
+            byte[] buf = new byte[Math.max(1024, dataLen / 2 + 64)];
+            int len = 0;
+            int flush = last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+            while (true) {
+                len += deflater.deflate(buf, len, buf.length - len, flush);
+                // A sync flush is complete once it leaves room in the output buffer.
+                if (last ? deflater.finished() : len < buf.length) break;
+                if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            return new Stripe(buf, len, a.getValue(), dataLen);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Filter one row. Level 0 uses no filtering; levels 1-3 use Sub; higher levels pick
+     * the filter with the smallest sum of absolute residuals (the usual libpng heuristic).
+     * {@code bpp} is the distance to the left neighbour's byte.
+     */
+    private static void filterRow(byte[] cur, byte[] prev, byte[] out, int off, int level, int bpp) {
+        int n = cur.length;
+        if (level == 0) {
+            out[off] = FILTER_NONE;
+            System.arraycopy(cur, 0, out, off + 1, n);
+            return;
+        }
+        if (level <= 3 || prev == null) {
+            out[off] = FILTER_SUB;
+            for (int i = 0; i < n; i++) {
+                int left = i >= bpp ? cur[i - bpp] : 0;
+                out[off + 1 + i] = (byte) (cur[i] - left);
+            }
+            return;
+        }
+        long sumNone = 0, sumSub = 0, sumUp = 0, sumPaeth = 0;
+        for (int i = 0; i < n; i++) {
+            int x = cur[i] & 0xFF;
+            int a = i >= bpp ? cur[i - bpp] & 0xFF : 0;
+            int b = prev[i] & 0xFF;
+            int c = i >= bpp ? prev[i - bpp] & 0xFF : 0;
+            sumNone  += Math.abs((byte) x);
+            sumSub   += Math.abs((byte) (x - a));
+            sumUp    += Math.abs((byte) (x - b));
+            sumPaeth += Math.abs((byte) (x - paeth(a, b, c)));
+        }
+        int filter = FILTER_NONE;
+        long best = sumNone;
+        if (sumSub < best)   { best = sumSub;   filter = FILTER_SUB; }
+        if (sumUp < best)    { best = sumUp;    filter = FILTER_UP; }
+        if (sumPaeth < best) { filter = FILTER_PAETH; }
+        out[off] = (byte) filter;
+        for (int i = 0; i < n; i++) {
+            int x = cur[i];
+            int a = i >= bpp ? cur[i - bpp] & 0xFF : 0;
+            int b = prev[i] & 0xFF;
+            int c = i >= bpp ? prev[i - bpp] & 0xFF : 0;
+            int pred = switch (filter) {
+                case FILTER_SUB -> a;
+                case FILTER_UP -> b;
+                case FILTER_PAETH -> paeth(a, b, c);
+                default -> 0;
+            };
+            out[off + 1 + i] = (byte) (x - pred);
+        }
+    }
+
+    static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) return a;
+        return pb <= pc ? b : c;
+    }
+
+    // ------------------------------------------------------------------
+    // Helpers
+    // ------------------------------------------------------------------
+
+    private static final int ADLER_BASE = 65521;
+
+    /** Same as zlib's adler32_combine: checksum of A||B from adler(A), adler(B) and len(B). */
+    static long combineAdler32(long adler1, long adler2, long len2) {
+        long rem = len2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum2 >= ((long) ADLER_BASE << 1)) sum2 -= ((long) ADLER_BASE << 1);
+        if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+        return sum1 | (sum2 << 16);
+    }
+
+    /** Length, type and CRC around each chunk's data. */
+    private static final int CHUNK_OVERHEAD = 12;
+
+    private static void writeChunk(ByteBuffer out, String type, byte[] data, int off, int len) {
+        byte[] head = new byte[8];
+        putInt(head, 0, len);
+        for (int i = 0; i < 4; i++) head[4 + i] = (byte) type.charAt(i);
+        CRC32 crc = new CRC32();
+        crc.update(head, 4, 4);
+        crc.update(data, off, len);
+        out.put(head, 0, 8);
+        out.put(data, off, len);
+        out.putInt((int) crc.getValue());
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off]     = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte)  v;
+    }
+}
@@ -0,0 +1,193 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Waits for a PNG that is written by someone else (no completion signal available).
+ * Uses a {@link WatchService} on the parent directory instead of sleep-polling,
+ * and treats the file as complete once its trailing IEND chunk is on disk.
+ * {@link #follow} reads such a file while it is still growing.
+ */
+final class PngFileWatcher {
+
+    /** length(0) + "IEND" + CRC of the empty IEND chunk. */
+    private static final byte[] IEND_TRAILER = {
+            0, 0, 0, 0, 0x49, 0x45, 0x4E, 0x44, (byte) 0xAE, 0x42, 0x60, (byte) 0x82
+    };
+    /** Re-check interval for file systems that never deliver watch events (e.g. network mounts). */
+    private static final long RECHECK_MS = 250;
+    /** Same for {@link #follow}, where a missed event stalls the decoder instead of a single check. */
+    private static final long FOLLOW_RECHECK_MS = 10;
+
+    private PngFileWatcher() {}
+
+    static boolean awaitWritten(Path path, long timeoutMs) {
+        return awaitWritten(path, timeoutMs, () -> false);
+    }
+
+    /** Same as {@link #awaitWritten(Path, long)}, but gives up (within one re-check) once {@code cancelled} is true. */
+    static boolean awaitWritten(Path path, long timeoutMs, BooleanSupplier cancelled) {
+        if (isComplete(path)) return true;
+        Path dir = path.toAbsolutePath().getParent();
+        if (dir == null) return false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+            // The file may have been completed between the first check and register().
+            if (isComplete(path)) return true;
+            Path name = path.getFileName();
+            while (true) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0 || cancelled.getAsBoolean()) return false;
+                WatchKey key = watcher.poll(Math.min(remaining, RECHECK_MS), TimeUnit.MILLISECONDS);
+                boolean touched = key == null;
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (name.equals(event.context())) touched = true;
+                    }
+                    key.reset();
+                }
+                if (touched && isComplete(path)) return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (IOException | ClosedWatchServiceException e) {
+            return isComplete(path);
+        }
+    }
+
+    /** True once the file ends with the PNG IEND chunk. */
+    static boolean isComplete(Path path) {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < IEND_TRAILER.length) return false;
+            ByteBuffer tail = ByteBuffer.allocate(IEND_TRAILER.length);
+            while (tail.hasRemaining()) {
+                if (ch.read(tail, size - IEND_TRAILER.length + tail.position()) < 0) return false;
+            }
+            return Arrays.equals(tail.array(), IEND_TRAILER);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stream over {@code path} that follows the file as it is written, like {@code tail -f}:
+     * a read at the current end of the file blocks until more bytes land (or the file appears).
+     * It never reports end of stream, so the reader must know where its data ends. Reads fail
+     * with {@link InterruptedIOException} once {@code cancelled} is true, and with
+     * {@link IOException} if the file stops growing for {@code timeoutMs} or shrinks.
+     */
+    static InputStream follow(Path path, long timeoutMs, BooleanSupplier cancelled) throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        if (dir == null) throw new IOException("No parent directory: " + path);
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        try {
+            dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+        } catch (IOException | RuntimeException e) {
+            watcher.close();
+            throw e;
+        }
+        return new TailInputStream(path, watcher, timeoutMs, cancelled);
+    }
+
+    private static final class TailInputStream extends InputStream {
+        private final Path path;
+        private final WatchService watcher;
+        private final long timeoutMs;
+        private final BooleanSupplier cancelled;
+        private FileChannel channel;
+        private long position;
+
+        TailInputStream(Path path, WatchService watcher, long timeoutMs, BooleanSupplier cancelled) {
+            this.path = path;
+            this.watcher = watcher;
+            this.timeoutMs = timeoutMs;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (true) {
+                if (cancelled.getAsBoolean()) throw new InterruptedIOException("Cancelled");
+                if (channel == null) {
+                    try {
+                        channel = FileChannel.open(path, StandardOpenOption.READ);
+                    } catch (NoSuchFileException e) {
+                        // Not created yet.
+                    }
+                }
+                if (channel != null) {
+                    long size = channel.size();
+                    if (size < position) throw new IOException("Screenshot file was truncated while reading: " + path);
+                    if (size > position) {
+                        int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, size - position)), position);
+                        if (n > 0) {
+                            position += n;
+                            return n;
+                        }
+                    }
+                }
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) throw new IOException("Screenshot file stopped growing: " + path);
+                awaitChange(Math.min(remaining, FOLLOW_RECHECK_MS));
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            return channel == null ? 0 : (int) Math.min(Integer.MAX_VALUE, Math.max(0, channel.size() - position));
+        }
+
+        private void awaitChange(long timeoutMs) throws IOException {
+            try {
+                WatchKey key = watcher.poll(timeoutMs, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted");
+            } catch (ClosedWatchServiceException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                watcher.close();
+            } finally {
+                if (channel != null) channel.close();
+            }
+        }
+    }
+}
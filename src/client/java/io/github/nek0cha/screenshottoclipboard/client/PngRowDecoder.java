@@ -0,0 +1,208 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Sequential, memory-bounded PNG decoder: inflates and unfilters one row at a time,
+ * so a 16K screenshot costs two rows of state instead of a full {@code BufferedImage}.
+ *
+ * Only the layouts Minecraft writes are supported (8-bit RGB / RGBA, non-interlaced);
+ * {@link #open} throws {@link IOException} for anything else so callers can fall back
+ * to ImageIO. Rows are returned in the same packed RGB / BGR form as {@link RowReader}.
+ * The input is read strictly sequentially, so it may be a file that is still growing.
+ */
+final class PngRowDecoder implements Closeable {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int IHDR = 0x49484452;
+    private static final int IDAT = 0x49444154;
+    private static final int IEND = 0x49454E44;
+    private static final int INPUT_BUFFER = 64 * 1024;
+
+    private final InputStream file;
+    private final InflaterInputStream pixels;
+    private final int width;
+    private final int height;
+    private final int bpp;
+    private final PixelKernels.ByteKernel toBgr;
+    private final PixelKernels.ByteKernel toRgb;
+    private byte[] prev;
+    private byte[] cur;
+    private int nextRow;
+
+    private PngRowDecoder(InputStream file) throws IOException {
+        this.file = file;
+        DataInputStream in = new DataInputStream(file);
+        byte[] sig = new byte[SIGNATURE.length];
+        in.readFully(sig);
+        if (!Arrays.equals(sig, SIGNATURE)) throw new IOException("Not a PNG file");
+        if (in.readInt() != 13 || in.readInt() != IHDR) throw new IOException("PNG does not start with IHDR");
+        width  = in.readInt();
+        height = in.readInt();
+        int depth  = in.readUnsignedByte();
+        int colour = in.readUnsignedByte();
+        in.readUnsignedByte();                       // compression (always deflate)
+        in.readUnsignedByte();                       // filter method (always adaptive)
+        int interlace = in.readUnsignedByte();
+        in.readInt();                                // CRC
+        if (depth != 8 || (colour != 2 && colour != 6) || interlace != 0 || width <= 0 || height <= 0) {
+            throw new IOException("Unsupported PNG layout (depth=" + depth + ", colour=" + colour
+                    + ", interlace=" + interlace + ")");
+        }
+        bpp = colour == 6 ? 4 : 3;
+        if ((long) width * bpp > Integer.MAX_VALUE - 8) throw new IOException("PNG row too wide: " + width);
+
+        // Skip ancillary chunks up to the first IDAT.
+        while (true) {
+            int len = in.readInt();
+            int type = in.readInt();
+            if (type == IDAT) {
+                pixels = new InflaterInputStream(new IdatStream(in, len), new Inflater(), INPUT_BUFFER);
+                break;
+            }
+            if (type == IEND) throw new IOException("PNG has no image data");
+            in.skipNBytes(len + 4L);
+        }
+        prev = new byte[width * bpp];
+        cur  = new byte[width * bpp];
+        toBgr = PixelKernels.interleaved(bpp, 0, 1, 2, true);
+        toRgb = PixelKernels.interleaved(bpp, 0, 1, 2, false);
+    }
+
+    static PngRowDecoder open(Path path) throws IOException {
+        return open(Files.newInputStream(path));
+    }
+
+    /**
+     * Decoder over a PNG that is still being written: rows are returned as soon as their
+     * image data is on disk (see {@link PngFileWatcher#follow}), so decoding overlaps the write.
+     */
+    static PngRowDecoder follow(Path path, long timeoutMs, BooleanSupplier cancelled) throws IOException {
+        return open(PngFileWatcher.follow(path, timeoutMs, cancelled));
+    }
+
+    private static PngRowDecoder open(InputStream file) throws IOException {
+        InputStream in = new BufferedInputStream(file, INPUT_BUFFER);
+        try {
+            return new PngRowDecoder(in);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /** Width x height from the IHDR chunk, or -1 if {@code path} is not a readable PNG. */
+    static long pixelCount(Path path) {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            byte[] sig = new byte[SIGNATURE.length];
+            in.readFully(sig);
+            if (!Arrays.equals(sig, SIGNATURE) || in.readInt() != 13 || in.readInt() != IHDR) return -1;
+            return (long) in.readInt() * in.readInt();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    int width()  { return width; }
+    int height() { return height; }
+
+    /** Decode the next row and write {@code width * 3} bytes into {@code dst} at {@code off}. */
+    void readRow(byte[] dst, int off, boolean bgr) throws IOException {
+        if (nextRow >= height) throw new EOFException("All " + height + " rows already read");
+        int filter = pixels.read();
+        if (filter < 0) throw new EOFException("PNG image data ends at row " + nextRow);
+        if (pixels.readNBytes(cur, 0, cur.length) < cur.length) {
+            throw new EOFException("PNG image data ends at row " + nextRow);
+        }
+        unfilter(filter, cur, prev, bpp);
+
+        (bgr ? toBgr : toRgb).convert(cur, 0, dst, off, width);
+        byte[] t = prev; prev = cur; cur = t;
+        nextRow++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            pixels.close();
+        } finally {
+            file.close();
+        }
+    }
+
+    private static void unfilter(int filter, byte[] cur, byte[] prev, int bpp) throws IOException {
+        int n = cur.length;
+        switch (filter) {
+            case 0 -> {}
+            case 1 -> { for (int i = bpp; i < n; i++) cur[i] += cur[i - bpp]; }
+            case 2 -> { for (int i = 0; i < n; i++) cur[i] += prev[i]; }
+            case 3 -> {
+                for (int i = 0; i < n; i++) {
+                    int a = i >= bpp ? cur[i - bpp] & 0xFF : 0;
+                    cur[i] += (byte) ((a + (prev[i] & 0xFF)) >>> 1);
+                }
+            }
+            case 4 -> {
+                for (int i = 0; i < n; i++) {
+                    int a = i >= bpp ? cur[i - bpp] & 0xFF : 0;
+                    int c = i >= bpp ? prev[i - bpp] & 0xFF : 0;
+                    cur[i] += (byte) PngEncoder.paeth(a, prev[i] & 0xFF, c);
+                }
+            }
+            default -> throw new IOException("Invalid PNG filter type: " + filter);
+        }
+    }
+
+    /** Concatenated payload of consecutive IDAT chunks. */
+    private static final class IdatStream extends InputStream {
+        private final DataInputStream in;
+        private int remaining;
+        private boolean end;
+
+        IdatStream(DataInputStream in, int firstLength) {
+            this.in = in;
+            this.remaining = firstLength;
+        }
+
+        private boolean advance() throws IOException {
+            while (remaining == 0) {
+                if (end) return false;
+                in.readInt();                        // CRC of the previous IDAT
+                int len = in.readInt();
+                if (in.readInt() != IDAT) { end = true; return false; }
+                remaining = len;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!advance()) return -1;
+            int b = in.read();
+            if (b < 0) throw new EOFException("Truncated IDAT chunk");
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!advance()) return -1;
+            int n = in.read(b, off, Math.min(len, remaining));
+            if (n < 0) throw new EOFException("Truncated IDAT chunk");
+            remaining -= n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * In-memory copy of the screenshot PNG, taken while Minecraft writes it.
+ *
+ * The screenshot hook arms the tee on the writing thread, {@code NativeImageMixin} routes
+ * the NativeImage's PNG channel through {@link #wrap}, and every encoded byte lands in a
+ * pooled buffer as well as in the file. Once the write has finished the process and X11
+ * backends pipe the PNG from that buffer instead of reading the file back.
+ *
+ * Only the latest screenshot is kept; one that was never taken is released when the next
+ * one is captured. PNGs above {@link #MAX_CAPTURE_BYTES} are written through uncaptured.
+ * A write that does not end with an {@code IEND} chunk failed part-way (Minecraft logs and
+ * swallows the error); its capture is never published, and the last bytes are checked even
+ * for PNGs too large to capture.
+ */
+public final class PngTee {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("ScreenshotToClipboard");
+
+    private static final int MAX_CAPTURE_BYTES = 64 * 1024 * 1024;
+    private static final int MIN_CAPTURE_BYTES = 1024 * 1024;
+    /** The last 12 bytes of every PNG: an empty {@code IEND} chunk and its CRC. */
+    private static final byte[] IEND = {0, 0, 0, 0, 'I', 'E', 'N', 'D', (byte) 0xAE, 0x42, 0x60, (byte) 0x82};
+
+    private static final ThreadLocal<Capture> ARMED = new ThreadLocal<>();
+    /** Latest complete capture that no job has taken yet. Guarded by {@code PngTee.class}. */
+    private static Capture latest;
+
+    private PngTee() {}
+
+    /** Bytes written so far for one file; {@link #lease} has room for at least {@link #size} bytes. */
+    private static final class Capture {
+        final Path path;
+        BufferPool.Lease lease;
+        int size;
+        boolean dropped;
+        /** Set once the PNG channel has been routed through a {@link TeeChannel}. */
+        boolean wrapped;
+        /** The last {@code IEND.length} bytes written and the byte count, kept after {@link #drop} too. */
+        final byte[] tail = new byte[IEND.length];
+        long written;
+
+        Capture(Path path) {
+            this.path = path;
+        }
+
+        void append(ByteBuffer src) {
+            int n = src.remaining();
+            if (dropped || n == 0) return;
+            if ((long) size + n > MAX_CAPTURE_BYTES) {
+                drop();
+                return;
+            }
+            if (lease == null || lease.size() < size + n) {
+                // Exact for the usual single write of the whole PNG, doubling otherwise.
+                int capacity = lease == null ? n : (int) Math.min(MAX_CAPTURE_BYTES,
+                        Math.max((long) size + n, Math.max(MIN_CAPTURE_BYTES, 2L * lease.size())));
+                BufferPool.Lease grown = BufferPool.INSTANCE.acquire(capacity);
+                if (lease != null) {
+                    grown.buffer().put(0, lease.buffer(), 0, size);
+                    lease.close();
+                }
+                lease = grown;
+            }
+            lease.buffer().put(size, src, src.position(), n);
+            size += n;
+        }
+
+        /** Slides the bytes of {@code src} (position unchanged) into {@link #tail}. */
+        void track(ByteBuffer src) {
+            int n = src.remaining();
+            int keep = Math.min(n, tail.length);
+            System.arraycopy(tail, keep, tail, 0, tail.length - keep);
+            src.get(src.limit() - keep, tail, tail.length - keep, keep);
+            written += n;
+        }
+
+        /** Whether the bytes written so far end like a complete PNG. */
+        boolean endsWithIend() {
+            return written >= IEND.length && Arrays.equals(tail, IEND);
+        }
+
+        /** The captured PNG in a lease of exactly its size, or {@code null}. */
+        BufferPool.Lease finish() {
+            if (dropped || lease == null) return null;
+            if (lease.size() == size) return lease;
+            BufferPool.Lease exact = BufferPool.INSTANCE.acquire(size);
+            exact.buffer().put(0, lease.buffer(), 0, size);
+            lease.close();
+            lease = exact;
+            return exact;
+        }
+
+        void drop() {
+            dropped = true;
+            if (lease != null) lease.close();
+            lease = null;
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Screenshot hook / NativeImage mixin
+    // ------------------------------------------------------------------
+
+    /** Starts capturing the PNG that the current thread is about to write to {@code file}. */
+    public static void arm(File file) {
+        Capture stale = ARMED.get();
+        if (stale != null) stale.drop();       // a previous write on this thread never finished
+        ARMED.set(new Capture(file.toPath().toAbsolutePath()));
+    }
+
+    /** {@code out}, or a channel that also captures what is written, if this thread is armed. */
+    public static WritableByteChannel wrap(WritableByteChannel out) {
+        Capture capture = ARMED.get();
+        if (capture == null) return out;
+        capture.wrapped = true;
+        return new TeeChannel(out, capture);
+    }
+
+    /**
+     * Ends the capture on this thread, once the write has returned; a complete PNG then
+     * becomes available to {@link #take}. Returns {@code false} if the write evidently failed
+     * (the PNG channel was opened but did not receive a whole PNG), {@code true} otherwise,
+     * including when it could not be checked (nothing armed).
+     */
+    public static boolean finish() {
+        Capture capture = ARMED.get();
+        ARMED.remove();
+        if (capture == null || !capture.wrapped) return true;
+        if (!capture.endsWithIend()) {
+            LOGGER.debug("[ScreenshotToClipboard] {} was not written completely ({} bytes), capture discarded",
+                    capture.path.getFileName(), capture.written);
+            capture.drop();
+            return false;
+        }
+        if (capture.finish() == null) return true;
+        Capture previous;
+        synchronized (PngTee.class) {
+            previous = latest;
+            latest = capture;
+        }
+        if (previous != null) previous.drop();
+        LOGGER.debug("[ScreenshotToClipboard] Captured {} bytes of PNG while writing {}",
+                capture.size, capture.path.getFileName());
+        return true;
+    }
+
+    /**
+     * Hands over the captured PNG of {@code path}; the caller owns (and must close) the lease.
+     * {@code null} if it was not captured, has already been taken or was superseded.
+     */
+    static BufferPool.Lease take(Path path) {
+        Path abs = path.toAbsolutePath();
+        synchronized (PngTee.class) {
+            if (latest == null || !latest.path.equals(abs)) return null;
+            BufferPool.Lease lease = latest.lease;
+            latest = null;
+            return lease;
+        }
+    }
+
+    /** Writes through to the file and appends whatever it accepted to the capture. */
+    private static final class TeeChannel implements WritableByteChannel {
+        private final WritableByteChannel out;
+        private final Capture capture;
+
+        TeeChannel(WritableByteChannel out, Capture capture) {
+            this.out = out;
+            this.capture = capture;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int start = src.position();
+            int n = out.write(src);
+            if (n > 0) {
+                ByteBuffer accepted = src.duplicate().position(start).limit(start + n);
+                capture.track(accepted);
+                try {
+                    capture.append(accepted);
+                } catch (RuntimeException e) {
+                    // Never let the copy break the screenshot itself.
+                    LOGGER.debug("[ScreenshotToClipboard] PNG capture failed", e);
+                    capture.drop();
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return out.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking runner for the external clipboard tools ({@code wl-copy}, {@code xclip},
+ * {@code osascript}).
+ *
+ * Stdin is pumped from a (pooled) buffer or straight from the file's {@link FileChannel}
+ * on an I/O thread, completion comes from {@link Process#onExit()} and the deadline is
+ * enforced by a scheduler. A process that misses its deadline (or whose future is
+ * cancelled) resolves to {@code false} immediately and is torn down in the background
+ * ({@code destroy}, then {@code destroyForcibly} after a grace period), so the caller
+ * never waits for a hung tool.
+ */
+final class ProcessRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("ScreenshotToClipboard");
+
+    private static final long KILL_GRACE_MS = 500;
+
+    private static final ExecutorService IO = Executors.newCachedThreadPool(daemon("screenshot-to-clipboard-io"));
+    private static final ScheduledThreadPoolExecutor SCHEDULER =
+            new ScheduledThreadPoolExecutor(1, daemon("screenshot-to-clipboard-deadline"));
+
+    static {
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    private ProcessRunner() {}
+
+    /**
+     * Starts {@code command} with {@code stdinBytes} (preferred) or {@code stdinFile} piped to
+     * stdin. The future completes with {@code true} on exit status 0, {@code false} on any
+     * other status, start / pipe failure or when {@code timeoutMs} elapses.
+     */
+    static CompletableFuture<Boolean> run(List<String> command, Path stdinFile, ByteBuffer stdinBytes, long timeoutMs) {
+        return run(command, stdinFile, stdinBytes, null, timeoutMs);
+    }
+
+    /**
+     * Pipes a pooled PNG. The lease is retained until stdin is fully written, so the caller
+     * may close its own reference as soon as the future completes (or is abandoned).
+     */
+    static CompletableFuture<Boolean> run(List<String> command, BufferPool.Lease stdin, long timeoutMs) {
+        return run(command, null, stdin.buffer(), stdin.retain(), timeoutMs);
+    }
+
+    private static CompletableFuture<Boolean> run(List<String> command, Path stdinFile, ByteBuffer stdinBytes,
+                                                  AutoCloseable stdinOwner, long timeoutMs) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        Process p;
+        try {
+            p = new ProcessBuilder(command).redirectErrorStream(true).start();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("[ScreenshotToClipboard] Failed to start {}", command, e);
+            closeQuietly(stdinOwner);
+            result.complete(false);
+            return result;
+        }
+
+        ByteBuffer bytes = stdinBytes != null ? stdinBytes.duplicate() : null;
+        CompletableFuture.runAsync(() -> {
+            try {
+                pumpStdin(p, stdinFile, bytes);
+            } finally {
+                closeQuietly(stdinOwner);
+            }
+        }, IO);
+
+        var deadline = SCHEDULER.schedule(() -> {
+            if (result.complete(false)) LOGGER.warn("[ScreenshotToClipboard] Process {} timed out after {} ms", command, timeoutMs);
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+
+        p.onExit().thenAcceptAsync(exited -> {
+            int exit = exited.exitValue();
+            if (exit != 0) logOutput(command, exited);
+            closeQuietly(exited.getInputStream());
+            result.complete(exit == 0);
+        }, IO);
+
+        // Timed out, cancelled or done: stop the deadline, and kill the process if it is still running.
+        result.whenComplete((ok, error) -> {
+            deadline.cancel(false);
+            if (p.isAlive()) tearDown(p);
+        });
+        return result;
+    }
+
+    private static void pumpStdin(Process p, Path stdinFile, ByteBuffer bytes) {
+        try (OutputStream os = p.getOutputStream(); WritableByteChannel out = Channels.newChannel(os)) {
+            if (bytes != null) {
+                while (bytes.hasRemaining()) out.write(bytes);
+            } else if (stdinFile != null) {
+                try (FileChannel in = FileChannel.open(stdinFile, StandardOpenOption.READ)) {
+                    long size = in.size();
+                    for (long pos = 0; pos < size; ) pos += in.transferTo(pos, size - pos, out);
+                }
+            }
+        } catch (IOException e) {
+            // Typically a broken pipe because the tool exited early; its exit status decides.
+            LOGGER.debug("[ScreenshotToClipboard] Writing stdin failed", e);
+        }
+    }
+
+    private static void tearDown(Process p) {
+        p.destroy();
+        SCHEDULER.schedule(() -> {
+            if (p.isAlive()) p.destroyForcibly();
+        }, KILL_GRACE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void logOutput(List<String> command, Process p) {
+        try {
+            String err = new String(p.getInputStream().readNBytes(4096)).strip();
+            if (!err.isBlank()) LOGGER.warn("[ScreenshotToClipboard] Process {} => {}", command, err);
+        } catch (IOException ignored) {}
+    }
+
+    private static void closeQuietly(AutoCloseable c) {
+        if (c == null) return;
+        try { c.close(); } catch (Exception ignored) {}
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            int i = n.incrementAndGet();
+            Thread t = new Thread(r, i == 1 ? name : name + "-" + i);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Reads one image row as packed 8-bit RGB or BGR triplets.
+ *
+ * Known packed-int and interleaved-byte sRGB layouts are read straight from the
+ * raster's backing array; anything else goes through {@code getRGB} one row at a time.
+ * The per-pixel work is done by {@link PixelKernels}.
+ * Readers are stateless and safe to use from several threads for different rows.
+ */
+@FunctionalInterface
+interface RowReader {
+
+    /** Write {@code width * 3} bytes for row {@code y} into {@code dst} starting at {@code off}. */
+    void read(int y, byte[] dst, int off, boolean bgr);
+
+    static RowReader of(BufferedImage image) {
+        Raster raster = image.getRaster();
+        SampleModel sm = raster.getSampleModel();
+        DataBuffer db = raster.getDataBuffer();
+        boolean srgb = image.getColorModel().getColorSpace().isCS_sRGB();
+        int width = image.getWidth();
+        int tx = raster.getSampleModelTranslateX();
+        int ty = raster.getSampleModelTranslateY();
+
+        int type = image.getType();
+        if (srgb && db instanceof DataBufferInt dbi && sm instanceof SinglePixelPackedSampleModel sp
+                && (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)) {
+            int[] data = dbi.getData();
+            int stride = sp.getScanlineStride();
+            int base = dbi.getOffset() - ty * stride - tx;
+            PixelKernels.IntKernel toBgr = PixelKernels.packed(true), toRgb = PixelKernels.packed(false);
+            return (y, dst, off, bgr) -> (bgr ? toBgr : toRgb).convert(data, base + y * stride, dst, off, width);
+        }
+        if (srgb && db instanceof DataBufferByte dbb && sm instanceof PixelInterleavedSampleModel pi
+                && (type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR)) {
+            byte[] data = dbb.getData();
+            int stride = pi.getScanlineStride();
+            int pixelStride = pi.getPixelStride();
+            int[] bandOff = pi.getBandOffsets();          // bands are R, G, B(, A)
+            int base = dbb.getOffset() - ty * stride - tx * pixelStride;
+            PixelKernels.ByteKernel toBgr = PixelKernels.interleaved(pixelStride, bandOff[0], bandOff[1], bandOff[2], true);
+            PixelKernels.ByteKernel toRgb = PixelKernels.interleaved(pixelStride, bandOff[0], bandOff[1], bandOff[2], false);
+            return (y, dst, off, bgr) -> (bgr ? toBgr : toRgb).convert(data, base + y * stride, dst, off, width);
+        }
+        // Anything else (indexed, gray, 16-bit, non-sRGB): let AWT convert one row at a time.
+        PixelKernels.IntKernel toBgr = PixelKernels.packed(true), toRgb = PixelKernels.packed(false);
+        return (y, dst, off, bgr) -> {
+            int[] argb = image.getRGB(0, y, width, 1, null, 0, width);
+            (bgr ? toBgr : toRgb).convert(argb, 0, dst, off, width);
+        };
+    }
+}
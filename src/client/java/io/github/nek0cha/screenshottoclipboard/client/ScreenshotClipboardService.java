@@ -1,27 +1,77 @@
 package io.github.nek0cha.screenshottoclipboard.client;
 
+import com.sun.jna.Pointer;
+import io.github.nek0cha.screenshottoclipboard.client.PipelineMetrics.Span;
+import io.github.nek0cha.screenshottoclipboard.client.PipelineMetrics.Stage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntBinaryOperator;
+import java.util.stream.IntStream;
 
 /**
  * Java port of ScreenshotClipboardService.kt (reference project).
  * Processes screenshot files off the main thread and copies them to the OS clipboard.
- * A bounded queue (capacity 3) prevents unbounded memory growth.
+ * Jobs go through a single-slot mailbox: a new screenshot replaces the pending one and
+ * cancels the one in flight, so bursts only pay the latency of the last frame.
  */
 public final class ScreenshotClipboardService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger("ScreenshotToClipboard");
+    /** Pixels per task of {@link #snapshotAbgr}: each chunk is swapped while it is still in cache. */
+    private static final int SNAPSHOT_CHUNK = 1 << 16;
 
     public static final ScreenshotClipboardService INSTANCE = new ScreenshotClipboardService();
 
-    private record Job(File file, Runnable onSuccess, Runnable onFailure) {}
+    /**
+     * Screenshots with at least this many pixels (e.g. Minecraft's large-screenshot feature)
+     * are not snapshotted into the heap; they are copied from the saved file in streaming mode.
+     */
+    public static final long STREAMING_THRESHOLD_PIXELS = 1L << 25;
+
+    private record Job(File file, BufferedImage pixels, Future<?> written, ScreenshotHistory.Entry entry,
+                       Runnable onSuccess, Runnable onFailure, Runnable onSuperseded, Span queueWait,
+                       CancellationSignal cancel) {
+        Job(File file, BufferedImage pixels, Future<?> written, Runnable onSuccess, Runnable onFailure) {
+            this(file, pixels, written, null, onSuccess, onFailure, null);
+        }
+
+        Job(File file, BufferedImage pixels, Future<?> written, ScreenshotHistory.Entry entry,
+            Runnable onSuccess, Runnable onFailure, Runnable onSuperseded) {
+            this(file, pixels, written, entry, onSuccess, onFailure, onSuperseded,
+                    PipelineMetrics.start(Stage.QUEUE_WAIT), new CancellationSignal());
+        }
+
+        /** Drops the job's reference to a pooled pixel snapshot once it is finished or dropped. */
+        void release() {
+            BufferPool.Pixels pooled = BufferPool.pixelsOf(pixels);
+            if (pooled != null) pooled.close();
+        }
 
-    private final LinkedBlockingQueue<Job> queue = new LinkedBlockingQueue<>(3);
+        void superseded() {
+            if (onSuperseded == null) return;
+            try { onSuperseded.run(); }
+            catch (Throwable ignored) {}
+        }
+
+        Object label() {
+            return entry != null ? entry.name() : file;
+        }
+    }
+
+    private final Object lock = new Object();
+    /** Next job to run; replaced (not queued) by newer screenshots. Guarded by {@link #lock}. */
+    private Job pending;
+    /** Job the worker is running, cancelled when a newer one arrives. Guarded by {@link #lock}. */
+    private Job current;
     private final ThreadPoolExecutor executor;
 
     private ScreenshotClipboardService() {
@@ -45,36 +95,184 @@ public final class ScreenshotClipboardService {
     /**
      * Enqueue {@code screenshotFile} for clipboard copy.
      * {@code onSuccess}/{@code onFailure} are invoked from the worker thread.
-     * If the queue is full the oldest entry is dropped.
+     * A pending job that has not started yet is dropped and one in progress is cancelled.
+     * The file is watched until it is completely written.
      */
     public void enqueueFile(File screenshotFile, Runnable onSuccess, Runnable onFailure) {
-        Job job = new Job(screenshotFile, onSuccess, onFailure);
-        while (!queue.offer(job)) { queue.poll(); }
+        enqueueFile(screenshotFile, null, onSuccess, onFailure);
+    }
+
+    /**
+     * Same as {@link #enqueueFile(File, Runnable, Runnable)}, but {@code written} is
+     * completed by the caller once the file is on disk, so no watching is needed.
+     */
+    public void enqueueFile(File screenshotFile, Future<?> written, Runnable onSuccess, Runnable onFailure) {
+        enqueue(new Job(screenshotFile, null, written, onSuccess, onFailure));
+    }
+
+    /**
+     * Whether a {@code width} x {@code height} screenshot should be snapshotted for {@link #enqueuePixels}.
+     * Not for huge ones, nor when only a file reference will be copied.
+     */
+    public static boolean shouldSnapshot(int width, int height) {
+        long pixels = (long) width * height;
+        return pixels < STREAMING_THRESHOLD_PIXELS && !ClipboardUtil.prefersFileReference(pixels);
+    }
+
+    /**
+     * Copies a {@code width} x {@code height} frame, given as {@code argbAt(x, y)}, into a
+     * pooled TYPE_INT_RGB image for {@link #enqueuePixels}. The array is reused by a later
+     * snapshot once the job and the AWT clipboard contents are done with it.
+     */
+    public static BufferedImage snapshotPixels(int width, int height, IntBinaryOperator argbAt) {
+        BufferPool.INSTANCE.onFramebufferSize(width, height);
+        BufferPool.Pixels pixels = BufferPool.INSTANCE.acquirePixels(width, height);
+        try {
+            int[] dst = pixels.array();
+            for (int y = 0, i = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) dst[i++] = argbAt.applyAsInt(x, y);
+            }
+            return pixels.image();
+        } catch (RuntimeException | Error e) {
+            pixels.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Same as {@link #snapshotPixels(int, int, IntBinaryOperator)} for an RGBA NativeImage whose
+     * {@code 0xAABBGGRR} ints start at native {@code address}: bulk copies into the pooled
+     * array, each chunk followed by the R/B swap in place through {@link PixelKernels#abgrToArgb()},
+     * chunks in parallel.
+     */
+    public static BufferedImage snapshotAbgr(int width, int height, long address) {
+        if (address == 0) throw new IllegalArgumentException("NativeImage is not allocated");
+        BufferPool.INSTANCE.onFramebufferSize(width, height);
+        BufferPool.Pixels pixels = BufferPool.INSTANCE.acquirePixels(width, height);
+        try {
+            int[] dst = pixels.array();
+            Pointer src = new Pointer(address);
+            PixelKernels.IntSwapKernel swap = PixelKernels.abgrToArgb();
+            IntStream.range(0, (dst.length + SNAPSHOT_CHUNK - 1) / SNAPSHOT_CHUNK).parallel().forEach(c -> {
+                int off = c * SNAPSHOT_CHUNK, len = Math.min(SNAPSHOT_CHUNK, dst.length - off);
+                src.read(4L * off, dst, off, len);
+                swap.convert(dst, off, dst, off, len);
+            });
+            return pixels.image();
+        } catch (RuntimeException | Error e) {
+            pixels.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Enqueue an in-memory pixel snapshot for clipboard copy.
+     * A snapshot from {@link #snapshotPixels} is handed over: the job releases it.
+     * The AWT / Win32 backends consume {@code pixels} directly (no PNG re-read);
+     * {@code screenshotFile} is only used by the process backends on macOS / Linux,
+     * after {@code written} has completed.
+     */
+    public void enqueuePixels(BufferedImage pixels, File screenshotFile, Future<?> written,
+                              Runnable onSuccess, Runnable onFailure) {
+        BufferPool.INSTANCE.onFramebufferSize(pixels.getWidth(), pixels.getHeight());
+        enqueue(new Job(screenshotFile, pixels, written, onSuccess, onFailure));
+    }
+
+    /**
+     * Enqueue history entry {@code index} (1 = newest) for clipboard copy; it is re-copied
+     * from memory, without reading the saved file. Returns {@code false} if there is no such entry.
+     */
+    public boolean enqueueHistory(int index, Runnable onSuccess, Runnable onFailure) {
+        ScreenshotHistory.Entry entry = ScreenshotHistory.INSTANCE.get(index);
+        if (entry == null) return false;
+        enqueue(new Job(null, null, null, entry, onSuccess, onFailure, null));
+        return true;
+    }
+
+    /**
+     * Enqueue a job submitted by another game instance through {@link ClipboardBroker}.
+     * Exactly one of the three callbacks is invoked; {@code onSuperseded} when a newer job
+     * (from any instance) replaces or cancels it.
+     */
+    void enqueueRemote(File screenshotFile, BufferedImage pixels, Future<?> written,
+                       Runnable onSuccess, Runnable onFailure, Runnable onSuperseded) {
+        enqueue(new Job(screenshotFile, pixels, written, null, onSuccess, onFailure, onSuperseded));
+    }
+
+    private void enqueue(Job job) {
+        Job dropped;
+        synchronized (lock) {
+            dropped = pending;
+            pending = job;
+            if (current != null) current.cancel().cancel();
+            lock.notifyAll();
+        }
+        if (dropped != null) {
+            LOGGER.debug("[ScreenshotToClipboard] Superseded before start: {}", dropped.label());
+            dropped.release();
+            dropped.superseded();
+        }
+    }
+
+    private Job take() throws InterruptedException {
+        synchronized (lock) {
+            current = null;
+            while (pending == null) lock.wait();
+            current = pending;
+            pending = null;
+            return current;
+        }
     }
 
     private void workerLoop() {
         while (!Thread.currentThread().isInterrupted()) {
             Job job;
             try {
-                job = queue.take();
+                job = take();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 return;
             }
 
+            job.queueWait().close();
             try {
-                boolean ok = ClipboardUtil.copyImageToClipboard(job.file().toPath());
-                if (ok) {
-                    if (job.onSuccess() != null) job.onSuccess().run();
-                } else {
-                    LOGGER.warn("[ScreenshotToClipboard] Clipboard copy returned false for: {}", job.file());
-                    if (job.onFailure() != null) job.onFailure().run();
+                boolean ok = copy(job);
+                if (!ok) LOGGER.warn("[ScreenshotToClipboard] Clipboard copy returned false for: {}", job.label());
+                Runnable callback = ok ? job.onSuccess() : job.onFailure();
+                if (callback != null) {
+                    Span span = PipelineMetrics.start(Stage.CALLBACK);
+                    try {
+                        callback.run();
+                    } finally {
+                        span.close();
+                    }
                 }
+            } catch (CancellationException e) {
+                // A newer screenshot owns the clipboard now; its job reports the result.
+                LOGGER.debug("[ScreenshotToClipboard] Superseded in flight: {}", job.label());
+                job.superseded();
             } catch (Throwable t) {
                 LOGGER.warn("[ScreenshotToClipboard] Failed to copy screenshot to clipboard", t);
                 try { if (job.onFailure() != null) job.onFailure().run(); }
                 catch (Throwable ignored) {}
+            } finally {
+                job.release();
+            }
+        }
+    }
+
+    /** Copies directly, or hands the job to the instance hosting the clipboard broker. */
+    private static boolean copy(Job job) {
+        if (job.entry() != null) return ClipboardUtil.copyHistoryEntry(job.entry(), job.cancel());
+        if (ClipboardBroker.INSTANCE.isRemote()) {
+            try {
+                return ClipboardBroker.INSTANCE.submit(job.file(), job.pixels(), job.written(), job.cancel());
+            } catch (IOException e) {
+                LOGGER.debug("[ScreenshotToClipboard] Clipboard broker unreachable, copying directly", e);
             }
         }
+        return job.pixels() != null
+                ? ClipboardUtil.copyImageToClipboard(job.pixels(), job.file().toPath(), job.written(), job.cancel())
+                : ClipboardUtil.copyImageToClipboard(job.file().toPath(), job.written(), job.cancel());
     }
 }
\ No newline at end of file
@@ -0,0 +1,197 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The last few copied screenshots, kept as PNG bytes in exactly sized direct (off-heap)
+ * buffers so that {@code /sstoclip recopy} can put one back on the clipboard without
+ * touching the disk or the heap-sized pixels.
+ *
+ * Entries are captured after a successful copy on a background thread, from the PNG a
+ * backend already produced or else the saved file (or its {@link PngTee} capture) once it
+ * has been written; only downscaled copies, which have no file, are encoded. The ring holds at most {@code historySize}
+ * entries and {@code historyBudgetMegabytes} of PNG data; the least recently copied
+ * entry is evicted first. Indexes are by capture time, 1 = newest.
+ */
+final class ScreenshotHistory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("ScreenshotToClipboard");
+
+    static final ScreenshotHistory INSTANCE = new ScreenshotHistory();
+
+    /** A captured screenshot; {@link #png()} is a read-only view of the off-heap PNG. */
+    static final class Entry {
+        private final String name;
+        private final long key;
+        private final int width;
+        private final int height;
+        private final ByteBuffer png;
+        private long lastUsed;
+
+        private Entry(String name, long key, int width, int height, ByteBuffer png) {
+            this.name = name;
+            this.key = key;
+            this.width = width;
+            this.height = height;
+            this.png = png;
+            this.lastUsed = System.nanoTime();
+        }
+
+        String name() { return name; }
+        /** {@link ClipboardRequest#contentKey()} of the copy it was captured from; 0 if unknown. */
+        long key() { return key; }
+        int width() { return width; }
+        int height() { return height; }
+        int size() { return png.capacity(); }
+
+        ByteBuffer png() {
+            return png.duplicate();
+        }
+    }
+
+    /** Newest first. Guarded by {@code this}. */
+    private final List<Entry> entries = new ArrayList<>();
+    private long bytes;
+
+    private final ExecutorService capturer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "screenshot-to-clipboard-history");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private ScreenshotHistory() {}
+
+    static boolean isEnabled() {
+        ModConfig config = ModConfig.getInstance();
+        return config.historySize > 0 && config.historyBudgetMegabytes > 0;
+    }
+
+    /**
+     * Records what {@code request} just put on the clipboard. Only references are taken
+     * here; the PNG is copied (or encoded) off-heap on the history thread.
+     */
+    void capture(ClipboardRequest request, String name) {
+        if (!isEnabled() || request.fromHistory() || request.fileReference()) return;
+        long key = request.contentKey();
+        if (key != 0 && find(key) != null) return;                   // already kept, now most recently used
+        BufferPool.Lease png = request.encodedPng();
+        if (png != null) png.retain();
+        BufferedImage image = request.image();
+        Path file = request.savedPath();
+        Future<?> written = request.written();
+        if (png == null && image == null && file == null) return;
+        capturer.execute(() -> {
+            try (BufferPool.Lease lease = png != null ? png
+                    : file != null ? readSaved(file, written)
+                    : PngEncoder.encodePooled(image, Math.max(1, ModConfig.getInstance().pngCompressionLevel))) {
+                if (lease != null) add(name, key, lease.buffer());
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+                LOGGER.debug("[ScreenshotToClipboard] Failed to keep {} in history", name, e);
+            }
+        });
+    }
+
+    /**
+     * The PNG Minecraft wrote to {@code file}, waiting for the write to finish: its {@link PngTee}
+     * capture if no backend took it, otherwise read back. {@code null} if it is over budget.
+     */
+    private static BufferPool.Lease readSaved(Path file, Future<?> written) throws Exception {
+        if (written != null) written.get(ClipboardUtil.FILE_WRITE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        BufferPool.Lease teed = PngTee.take(file);
+        if (teed != null) return teed;
+        return fitsBudget(file) ? BufferPool.INSTANCE.readFile(file) : null;
+    }
+
+    /** Entry {@code index} (1 = newest), or {@code null}; marks it as recently used. */
+    synchronized Entry get(int index) {
+        if (index < 1 || index > entries.size()) return null;
+        Entry e = entries.get(index - 1);
+        e.lastUsed = System.nanoTime();
+        return e;
+    }
+
+    /** The entry captured from content {@code key}, or {@code null}; marks it as recently used. */
+    synchronized Entry find(long key) {
+        for (Entry e : entries) {
+            if (e.key == key) {
+                e.lastUsed = System.nanoTime();
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /** Snapshot of the entries, newest first. */
+    synchronized List<Entry> entries() {
+        return List.copyOf(entries);
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    // ------------------------------------------------------------------
+    // Internals
+    // ------------------------------------------------------------------
+
+    private void add(String name, long key, ByteBuffer src) {
+        int width = src.getInt(16), height = src.getInt(20);     // IHDR, right after the signature
+        long budget = ModConfig.getInstance().historyBudgetMegabytes * 1024L * 1024;
+        if (src.remaining() > budget) {
+            LOGGER.debug("[ScreenshotToClipboard] {} exceeds the history budget ({} bytes)", name, src.remaining());
+            return;
+        }
+        ByteBuffer copy = ByteBuffer.allocateDirect(src.remaining());
+        copy.put(src.duplicate()).flip();
+        Entry entry = new Entry(name, key, width, height, copy.asReadOnlyBuffer());
+        synchronized (this) {
+            // A repeat that was captured while the first one was still being encoded.
+            if (key != 0 && entries.stream().anyMatch(e -> e.key == key)) return;
+            entries.add(0, entry);
+            bytes += entry.size();
+            evict(ModConfig.getInstance().historySize, budget);
+        }
+        LOGGER.debug("[ScreenshotToClipboard] Kept {} in history ({} bytes, {} entries)",
+                name, entry.size(), entries().size());
+    }
+
+    private static boolean fitsBudget(Path file) {
+        try {
+            return Files.size(file) <= ModConfig.getInstance().historyBudgetMegabytes * 1024L * 1024;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Drops least recently used entries until both limits hold. Evicted buffers are freed by their cleaners. */
+    private void evict(int maxEntries, long budget) {
+        while (!entries.isEmpty() && (entries.size() > maxEntries || bytes > budget)) {
+            Entry lru = entries.get(0);
+            for (Entry e : entries) {
+                if (e.lastUsed < lru.lastUsed) lru = e;
+            }
+            entries.remove(lru);
+            bytes -= lru.size();
+        }
+    }
+}
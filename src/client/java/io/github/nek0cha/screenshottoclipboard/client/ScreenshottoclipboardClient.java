@@ -12,6 +12,8 @@ public class ScreenshottoclipboardClient implements ClientModInitializer {
     public void onInitializeClient() {
         // Load (or create) the config file on startup
         ModConfig.getInstance();
+        ClientCommands.register();
+        ClipboardWarmup.start();
         LOGGER.info("[ScreenshotToClipboard] Initialized. showMessage={}",
                 ModConfig.getInstance().showMessage);
     }
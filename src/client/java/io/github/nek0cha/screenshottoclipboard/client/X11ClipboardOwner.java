@@ -0,0 +1,445 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import com.sun.jna.Callback;
+import com.sun.jna.Library;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.platform.unix.X11;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-process X11 CLIPBOARD owner (replaces spawning {@code xclip} per screenshot).
+ *
+ * A long-lived daemon thread owns its own Display connection and an invisible
+ * 1x1 window. {@link #publish} hands a PNG to that thread, which takes the CLIPBOARD
+ * selection and then answers {@code SelectionRequest}s for {@code TARGETS} and
+ * {@code image/png} straight from the pooled off-heap PNG, using INCR for payloads that
+ * exceed the server's maximum request size. All Xlib calls happen on that thread;
+ * other threads wake it through a self-pipe.
+ *
+ * An INCR transfer holds its own reference to the PNG, so it is dropped when the
+ * requestor window is destroyed or stops reading for {@link #INCR_TIMEOUT_MS}.
+ *
+ * A requestor window can be destroyed at any moment, and the BadWindow from a request
+ * on it arrives asynchronously at Xlib's process-wide error handler, whose default
+ * exits the JVM. Every call that touches a requestor window therefore goes through
+ * {@link #requestorCalls}, which syncs under a handler that swallows errors from this
+ * connection and passes all others on to the handler it displaced.
+ */
+final class X11ClipboardOwner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("ScreenshotToClipboard");
+
+    private static final long PUBLISH_TIMEOUT_MS = 1000;
+    /** An INCR requestor that has not asked for the next chunk for this long is abandoned. */
+    private static final long INCR_TIMEOUT_MS = 5000;
+
+    // ------------------------------------------------------------------
+    // JNA interfaces (only what jna-platform's X11 binding lacks)
+    // ------------------------------------------------------------------
+    private interface XlibExtra extends Library {
+        XlibExtra INSTANCE = Native.load("X11", XlibExtra.class);
+        int XSetSelectionOwner(X11.Display display, X11.Atom selection, X11.Window owner, NativeLong time);
+        X11.Window XGetSelectionOwner(X11.Display display, X11.Atom selection);
+        int XConnectionNumber(X11.Display display);
+        NativeLong XMaxRequestSize(X11.Display display);
+        NativeLong XExtendedMaxRequestSize(X11.Display display);
+        ErrorHandler XSetErrorHandler(ErrorHandler handler);
+    }
+    /**
+     * Xlib's process-wide error handler. Takes raw pointers: jna-platform's
+     * {@code XErrorEvent} declares its fields in the wrong order.
+     */
+    private interface ErrorHandler extends Callback {
+        int apply(Pointer display, Pointer event);
+    }
+    private interface PosixExtra extends Library {
+        PosixExtra INSTANCE = Native.load("c", PosixExtra.class);
+        int pipe(int[] fds);
+        int poll(Pointer fds, NativeLong nfds, int timeout);
+        NativeLong read(int fd, byte[] buf, NativeLong count);
+        NativeLong write(int fd, byte[] buf, NativeLong count);
+    }
+
+    private record Offer(BufferPool.Lease png, CompletableFuture<Boolean> result) {}
+
+    /** An INCR transfer in progress to one requestor property. */
+    private static final class IncrTransfer {
+        final X11.Window requestor;
+        final X11.Atom property;
+        final BufferPool.Lease data;
+        long offset;
+        /** {@link System#nanoTime()} after which the transfer is abandoned. */
+        long deadline;
+        IncrTransfer(X11.Window requestor, X11.Atom property, BufferPool.Lease data) {
+            this.requestor = requestor;
+            this.property = property;
+            this.data = data;
+            touch();
+        }
+        void touch() {
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(INCR_TIMEOUT_MS);
+        }
+    }
+
+    private static volatile X11ClipboardOwner instance;
+    private static volatile boolean unavailable;
+
+    private final AtomicReference<Offer> pending = new AtomicReference<>();
+    private final int[] wakePipe = new int[2];
+    /** Kept strongly reachable: Xlib holds on to the native stub while it is installed. */
+    private final ErrorHandler errorHandler = this::handleError;
+    /** The handler {@link #errorHandler} displaced; errors from other connections go there. */
+    private volatile ErrorHandler chainedHandler;
+    /** Set by {@link #handleError} when a request inside {@link #requestorCalls} failed. */
+    private volatile boolean requestFailed;
+
+    // Owned by the event thread
+    private X11.Display display;
+    private X11.Window window;
+    private X11.Atom clipboard, targets, incr, png;
+    private long maxChunk;
+    /** Written by the event thread only; read by {@link #isServing}. */
+    private volatile BufferPool.Lease owned;
+    private final List<IncrTransfer> transfers = new ArrayList<>();
+    /** {@code transfers.size()}, published for {@link #activeTransfers}. */
+    private volatile int activeTransfers;
+
+    private X11ClipboardOwner() {}
+
+    /**
+     * Returns the shared owner, starting its event thread on first use,
+     * or {@code null} if there is no X display or libX11 cannot be loaded.
+     */
+    static X11ClipboardOwner get() {
+        if (unavailable) return null;
+        X11ClipboardOwner o = instance;
+        if (o != null) return o;
+        synchronized (X11ClipboardOwner.class) {
+            if (instance != null || unavailable) return instance;
+            String disp = System.getenv("DISPLAY");
+            if (disp == null || disp.isBlank()) { unavailable = true; return null; }
+            try {
+                X11ClipboardOwner owner = new X11ClipboardOwner();
+                CompletableFuture<Boolean> started = new CompletableFuture<>();
+                Thread t = new Thread(() -> owner.run(started), "screenshot-to-clipboard-x11");
+                t.setDaemon(true);
+                t.start();
+                if (!started.get(PUBLISH_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    unavailable = true;
+                    return null;
+                }
+                instance = owner;
+                return owner;
+            } catch (Throwable t) {
+                LOGGER.warn("[ScreenshotToClipboard] X11 clipboard owner unavailable", t);
+                unavailable = true;
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Take the CLIPBOARD selection and serve {@code png} as {@code image/png}.
+     * The owner keeps its own reference to the lease for as long as it serves it.
+     * Returns once ownership has been acquired (or failed).
+     */
+    boolean publish(BufferPool.Lease png) {
+        Offer offer = new Offer(png.retain(), new CompletableFuture<>());
+        Offer replaced = pending.getAndSet(offer);
+        if (replaced != null) {
+            replaced.result().complete(false);
+            replaced.png().close();
+        }
+        wake();
+        try {
+            return offer.result().get(PUBLISH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /** Whether CLIPBOARD is still owned with {@code png} (no other client has taken it since). */
+    boolean isServing(BufferPool.Lease png) {
+        return owned == png;
+    }
+
+    private void wake() {
+        PosixExtra.INSTANCE.write(wakePipe[1], new byte[]{1}, new NativeLong(1));
+    }
+
+    // ------------------------------------------------------------------
+    // Event thread
+    // ------------------------------------------------------------------
+    private void run(CompletableFuture<Boolean> started) {
+        X11 x = X11.INSTANCE;
+        try {
+            display = x.XOpenDisplay(null);
+            if (display == null || PosixExtra.INSTANCE.pipe(wakePipe) != 0) {
+                started.complete(false);
+                return;
+            }
+            window = x.XCreateSimpleWindow(display, x.XDefaultRootWindow(display), 0, 0, 1, 1, 0, 0, 0);
+            clipboard = x.XInternAtom(display, "CLIPBOARD", false);
+            targets   = x.XInternAtom(display, "TARGETS", false);
+            incr      = x.XInternAtom(display, "INCR", false);
+            png       = x.XInternAtom(display, "image/png", false);
+            long maxRequest = XlibExtra.INSTANCE.XExtendedMaxRequestSize(display).longValue();
+            if (maxRequest == 0) maxRequest = XlibExtra.INSTANCE.XMaxRequestSize(display).longValue();
+            // Request sizes are in 4-byte units; like xclip, send at most a quarter of that per request.
+            maxChunk = Math.max(4096, maxRequest);
+            x.XFlush(display);
+            started.complete(true);
+        } catch (Throwable t) {
+            LOGGER.debug("[ScreenshotToClipboard] X11 clipboard owner failed to start", t);
+            started.complete(false);
+            return;
+        }
+
+        int xfd = XlibExtra.INSTANCE.XConnectionNumber(display);
+        Memory fds = new Memory(16);                     // struct pollfd[2]
+        final short POLLIN = 0x0001;
+        byte[] drain = new byte[64];
+        X11.XEvent event = new X11.XEvent();
+        while (true) {
+            try {
+                while (x.XPending(display) > 0) {
+                    x.XNextEvent(display, event);
+                    handleEvent(event);
+                }
+                Offer offer = pending.getAndSet(null);
+                if (offer != null) offer.result().complete(takeOwnership(offer.png()));
+                x.XFlush(display);
+                if (x.XPending(display) > 0 || pending.get() != null) continue;
+
+                fds.clear();
+                fds.setInt(0, xfd);        fds.setShort(4, POLLIN);
+                fds.setInt(8, wakePipe[0]); fds.setShort(12, POLLIN);
+                PosixExtra.INSTANCE.poll(fds, new NativeLong(2), pollTimeout());
+                if ((fds.getShort(14) & POLLIN) != 0) {
+                    PosixExtra.INSTANCE.read(wakePipe[0], drain, new NativeLong(drain.length));
+                }
+                expireTransfers();
+            } catch (Throwable t) {
+                LOGGER.warn("[ScreenshotToClipboard] X11 clipboard event loop error", t);
+            }
+        }
+    }
+
+    /** Takes over {@code png}'s reference: it becomes {@link #owned} or is released. */
+    private boolean takeOwnership(BufferPool.Lease png) {
+        disown();
+        owned = png;
+        XlibExtra.INSTANCE.XSetSelectionOwner(display, clipboard, window, new NativeLong(X11.CurrentTime));
+        X11.Window current = XlibExtra.INSTANCE.XGetSelectionOwner(display, clipboard);
+        boolean ok = current != null && current.longValue() == window.longValue();
+        if (!ok) disown();
+        LOGGER.debug("[ScreenshotToClipboard] X11 CLIPBOARD ownership {} ({} bytes)", ok ? "acquired" : "refused", png.size());
+        return ok;
+    }
+
+    private void disown() {
+        if (owned != null) owned.close();
+        owned = null;
+    }
+
+    private void handleEvent(X11.XEvent event) {
+        switch (event.type) {
+            case X11.SelectionRequest -> handleSelectionRequest(
+                    (X11.XSelectionRequestEvent) event.getTypedValue(X11.XSelectionRequestEvent.class));
+            case X11.SelectionClear -> {
+                // Another client owns CLIPBOARD now; running INCR transfers keep their own reference.
+                disown();
+                LOGGER.debug("[ScreenshotToClipboard] X11 CLIPBOARD ownership lost");
+            }
+            case X11.PropertyNotify -> handlePropertyNotify(
+                    (X11.XPropertyEvent) event.getTypedValue(X11.XPropertyEvent.class));
+            case X11.DestroyNotify -> {
+                X11.XDestroyWindowEvent ev =
+                        (X11.XDestroyWindowEvent) event.getTypedValue(X11.XDestroyWindowEvent.class);
+                // The requestor went away mid-transfer; nobody will delete the property again.
+                dropTransfers(ev.window);
+            }
+            default -> {}
+        }
+    }
+
+    private void handleSelectionRequest(X11.XSelectionRequestEvent req) {
+        X11 x = X11.INSTANCE;
+        // Obsolete clients pass None as property; use the target atom instead (ICCCM 2.2).
+        X11.Atom property = isNone(req.property) ? req.target : req.property;
+        boolean served = owned != null && same(req.selection, clipboard)
+                && (same(req.target, targets) || same(req.target, png));
+        boolean ok = requestorCalls(() -> {
+            if (served && same(req.target, targets)) {
+                Memory list = new Memory(2L * Native.LONG_SIZE);
+                setLong(list, 0, targets.longValue());
+                setLong(list, 1, png.longValue());
+                x.XChangeProperty(display, req.requestor, property, X11.XA_ATOM, 32,
+                        X11.PropModeReplace, list, 2);
+            } else if (served) {
+                long size = owned.size();
+                if (size <= maxChunk) {
+                    x.XChangeProperty(display, req.requestor, property, png, 8,
+                            X11.PropModeReplace, pointer(owned), (int) size);
+                } else {
+                    // INCR: announce the size, then send chunks each time the requestor deletes the property.
+                    x.XSelectInput(display, req.requestor,
+                            new NativeLong(X11.PropertyChangeMask | X11.StructureNotifyMask));
+                    Memory len = new Memory(Native.LONG_SIZE);
+                    setLong(len, 0, size);
+                    x.XChangeProperty(display, req.requestor, property, incr, 32,
+                            X11.PropModeReplace, len, 1);
+                    transfers.add(new IncrTransfer(req.requestor, property, owned.retain()));
+                    activeTransfers = transfers.size();
+                }
+            }
+
+            X11.XEvent reply = new X11.XEvent();
+            reply.type = X11.SelectionNotify;
+            reply.setType(X11.XSelectionEvent.class);
+            reply.xselection.type = X11.SelectionNotify;
+            reply.xselection.display = display;
+            reply.xselection.requestor = req.requestor;
+            reply.xselection.selection = req.selection;
+            reply.xselection.target = req.target;
+            reply.xselection.property = served ? property : X11.Atom.None;
+            reply.xselection.time = req.time;
+            x.XSendEvent(display, req.requestor, 0, new NativeLong(X11.NoEventMask), reply);
+        });
+        if (!ok) dropTransfers(req.requestor);
+    }
+
+    private void handlePropertyNotify(X11.XPropertyEvent ev) {
+        if (ev.state != X11.PropertyDelete) return;
+        for (int i = 0; i < transfers.size(); i++) {
+            IncrTransfer t = transfers.get(i);
+            if (!same(t.requestor, ev.window) || !same(t.property, ev.atom)) continue;
+            int chunk = (int) Math.min(maxChunk, t.data.size() - t.offset);
+            // A zero-length chunk terminates the transfer.
+            boolean ok = requestorCalls(() -> X11.INSTANCE.XChangeProperty(display, t.requestor, t.property,
+                    png, 8, X11.PropModeReplace, pointer(t.data).share(t.offset), chunk));
+            if (!ok) {
+                LOGGER.debug("[ScreenshotToClipboard] X11 INCR requestor vanished after {} of {} bytes",
+                        t.offset, t.data.size());
+                dropTransfers(t.requestor);
+                return;
+            }
+            t.offset += chunk;
+            t.touch();
+            if (chunk == 0) endTransfer(i, true);
+            return;
+        }
+    }
+
+    /** Drops INCR transfers whose requestor stopped reading. */
+    private void expireTransfers() {
+        long now = System.nanoTime();
+        for (int i = transfers.size() - 1; i >= 0; i--) {
+            IncrTransfer t = transfers.get(i);
+            if (now - t.deadline < 0) continue;
+            LOGGER.debug("[ScreenshotToClipboard] X11 INCR transfer timed out after {} of {} bytes",
+                    t.offset, t.data.size());
+            endTransfer(i, true);
+        }
+    }
+
+    /** Milliseconds until the earliest INCR deadline, or -1 (wait indefinitely) with none running. */
+    private int pollTimeout() {
+        if (transfers.isEmpty()) return -1;
+        long earliest = Long.MAX_VALUE;
+        for (IncrTransfer t : transfers) earliest = Math.min(earliest, t.deadline - System.nanoTime());
+        return (int) Math.max(0, TimeUnit.NANOSECONDS.toMillis(earliest) + 1);
+    }
+
+    /** Releases every transfer to {@code requestor}, whose window is gone. */
+    private void dropTransfers(X11.Window requestor) {
+        for (int i = transfers.size() - 1; i >= 0; i--) {
+            if (same(transfers.get(i).requestor, requestor)) endTransfer(i, false);
+        }
+    }
+
+    /**
+     * Releases transfer {@code i}. Unless the requestor window is already gone, stops
+     * listening to it once no other transfer to the same window is left.
+     */
+    private void endTransfer(int i, boolean windowAlive) {
+        IncrTransfer t = transfers.remove(i);
+        activeTransfers = transfers.size();
+        t.data.close();
+        if (!windowAlive) return;
+        for (IncrTransfer other : transfers) {
+            if (same(other.requestor, t.requestor)) return;
+        }
+        requestorCalls(() -> X11.INSTANCE.XSelectInput(display, t.requestor, new NativeLong(X11.NoEventMask)));
+    }
+
+    /** Number of INCR transfers still holding a reference to a PNG (for tests). */
+    int activeTransfers() {
+        return activeTransfers;
+    }
+
+    /**
+     * Runs {@code calls}, which touch a requestor window that may already be destroyed, and
+     * syncs so their errors are reported before returning. Extension error hooks would not do:
+     * Xlib only consults them for errors seen while waiting for a reply, and these requests
+     * have none. The handler is process-wide, so it is only installed for the duration and
+     * chains errors from other connections (GLFW's) to the handler it displaced.
+     *
+     * @return {@code false} if any of the requests failed
+     */
+    private boolean requestorCalls(Runnable calls) {
+        requestFailed = false;
+        ErrorHandler previous = XlibExtra.INSTANCE.XSetErrorHandler(errorHandler);
+        // GLFW may have restored ours after a grab that raced with the last call; keep the real one.
+        if (previous != errorHandler) chainedHandler = previous;
+        try {
+            calls.run();
+            X11.INSTANCE.XSync(display, false);
+        } finally {
+            XlibExtra.INSTANCE.XSetErrorHandler(chainedHandler);
+        }
+        return !requestFailed;
+    }
+
+    private int handleError(Pointer d, Pointer event) {
+        if (Pointer.nativeValue(d) == Pointer.nativeValue(display.getPointer())) {
+            requestFailed = true;
+            // XErrorEvent: int type, Display*, XID resourceid, unsigned long serial, then the codes.
+            LOGGER.debug("[ScreenshotToClipboard] Ignored X11 error {} (request {}) on clipboard connection",
+                    event.getByte(4L * Native.LONG_SIZE) & 0xFF, event.getByte(4L * Native.LONG_SIZE + 1) & 0xFF);
+            return 0;
+        }
+        ErrorHandler previous = chainedHandler;
+        return previous != null ? previous.apply(d, event) : 0;
+    }
+
+    private static Pointer pointer(BufferPool.Lease lease) {
+        return Native.getDirectBufferPointer(lease.buffer());
+    }
+
+    private static void setLong(Memory mem, int index, long value) {
+        if (Native.LONG_SIZE == 8) mem.setLong(index * 8L, value);
+        else mem.setInt(index * 4L, (int) value);
+    }
+
+    private static boolean same(X11.XID a, X11.XID b) {
+        return a != null && b != null && a.longValue() == b.longValue();
+    }
+
+    private static boolean isNone(X11.XID id) {
+        return id == null || id.longValue() == X11.None;
+    }
+}
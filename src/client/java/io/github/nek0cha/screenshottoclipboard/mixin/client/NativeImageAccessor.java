@@ -0,0 +1,16 @@
+package io.github.nek0cha.screenshottoclipboard.mixin.client;
+
+import net.minecraft.client.texture.NativeImage;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+/**
+ * Address of a NativeImage's pixel memory, so {@link ScreenshotRecorderMixin} can copy the
+ * whole frame in one go instead of calling {@code getColorArgb} once per pixel.
+ */
+@Mixin(NativeImage.class)
+public interface NativeImageAccessor {
+
+    @Accessor("pointer")
+    long stc$getPointer();
+}
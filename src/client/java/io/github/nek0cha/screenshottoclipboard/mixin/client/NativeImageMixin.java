@@ -0,0 +1,31 @@
+package io.github.nek0cha.screenshottoclipboard.mixin.client;
+
+import io.github.nek0cha.screenshottoclipboard.client.PngTee;
+import net.minecraft.client.texture.NativeImage;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.ModifyArg;
+
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Routes the channel that {@code NativeImage.writeTo(Path)} encodes the PNG into through
+ * {@link PngTee}, so a screenshot's PNG is captured in memory while it is written.
+ * Only threads armed by {@link ScreenshotRecorderMixin} are affected. Optional: if the
+ * target moves, screenshots are simply read back from the file as before.
+ */
+@Mixin(NativeImage.class)
+public class NativeImageMixin {
+
+    @ModifyArg(
+        method = "writeTo(Ljava/nio/file/Path;)V",
+        at = @At(
+            value = "INVOKE",
+            target = "Lnet/minecraft/client/texture/NativeImage;write(Ljava/nio/channels/WritableByteChannel;)Z"
+        ),
+        require = 0
+    )
+    private WritableByteChannel stc$teePng(WritableByteChannel channel) {
+        return PngTee.wrap(channel);
+    }
+}
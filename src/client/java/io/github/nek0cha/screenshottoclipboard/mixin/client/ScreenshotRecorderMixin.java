@@ -1,6 +1,7 @@
 package io.github.nek0cha.screenshottoclipboard.mixin.client;
 
 import io.github.nek0cha.screenshottoclipboard.client.ModConfig;
+import io.github.nek0cha.screenshottoclipboard.client.PngTee;
 import io.github.nek0cha.screenshottoclipboard.client.ScreenshotClipboardService;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.texture.NativeImage;
@@ -9,27 +10,39 @@ import net.minecraft.text.Text;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
  * Java port of ScreenshotToClipboardMixin.java (reference project).
  * Hooks the private static helper {@code method_22691} inside ScreenshotRecorder
- * that is called after the screenshot PNG has been written to disk.
+ * that writes the screenshot PNG to disk.
+ * At HEAD the pixels are snapshotted into a pooled array with one bulk copy of the
+ * NativeImage memory and an R/B swap kernel (the NativeImage is closed by the time TAIL runs) and the job is enqueued, so the AWT / Win32 backends never wait for or decode the PNG.
+ * At TAIL the job's "file written" token is completed for the process backends, or
+ * failed if {@link PngTee} saw the write break off.
+ * In between, {@link PngTee} keeps the PNG bytes as they are written, so those backends
+ * pipe it from memory instead of reading the file back.
  */
 @Mixin(ScreenshotRecorder.class)
 public class ScreenshotRecorderMixin {
 
     private static final Logger LOGGER = LoggerFactory.getLogger("ScreenshotToClipboard");
     private static boolean stc$loggedError = false;
+    @Unique
+    private static final ThreadLocal<CompletableFuture<Void>> stc$written = new ThreadLocal<>();
 
     @Inject(
         method = "method_22691(Lnet/minecraft/client/texture/NativeImage;Ljava/io/File;Ljava/util/function/Consumer;)V",
-        at = @At("TAIL")
+        at = @At("HEAD")
     )
     private static void stc$copyScreenshotToClipboard(
             NativeImage image,
@@ -39,35 +52,58 @@ public class ScreenshotRecorderMixin {
         try {
             if (file == null) return;
 
-            // Enqueue the saved PNG file for off-thread clipboard copy.
-            // onSuccess / onFailure send a chat message only when showMessage is enabled.
-            ScreenshotClipboardService.INSTANCE.enqueueFile(
-                file,
-                /* onSuccess */ () -> {
-                    if (!ModConfig.getInstance().showMessage) return;
-                    MinecraftClient client = MinecraftClient.getInstance();
-                    if (client == null) return;
-                    client.execute(() -> {
-                        if (client.player != null) {
-                            client.player.sendMessage(
-                                Text.translatable("screenshottoclipboard.message.copied"),
-                                false);
-                        }
-                    });
-                },
-                /* onFailure */ () -> {
-                    if (!ModConfig.getInstance().showMessage) return;
-                    MinecraftClient client = MinecraftClient.getInstance();
-                    if (client == null) return;
-                    client.execute(() -> {
-                        if (client.player != null) {
-                            client.player.sendMessage(
-                                Text.translatable("screenshottoclipboard.message.failed"),
-                                false);
-                        }
-                    });
+            // Completed at TAIL, once the PNG is on disk.
+            CompletableFuture<Void> written = new CompletableFuture<>();
+            stc$written.set(written);
+            PngTee.arm(file);
+
+            BufferedImage pixels = null;
+            try {
+                // Huge screenshots skip the snapshot and are streamed from the file instead.
+                if (image != null && ScreenshotClipboardService.shouldSnapshot(image.getWidth(), image.getHeight())) {
+                    if (image.getFormat() == NativeImage.Format.RGBA) {
+                        pixels = ScreenshotClipboardService.snapshotAbgr(image.getWidth(), image.getHeight(),
+                                ((NativeImageAccessor) (Object) image).stc$getPointer());
+                    } else {
+                        pixels = ScreenshotClipboardService.snapshotPixels(
+                                image.getWidth(), image.getHeight(), image::getColorArgb);
+                    }
                 }
-            );
+            } catch (Throwable t) {
+                LOGGER.debug("[ScreenshotToClipboard] Pixel snapshot failed, falling back to file", t);
+            }
+
+            // Enqueue the screenshot for off-thread clipboard copy.
+            // onSuccess / onFailure send a chat message only when showMessage is enabled.
+            Runnable onSuccess = () -> {
+                if (!ModConfig.getInstance().showMessage) return;
+                MinecraftClient client = MinecraftClient.getInstance();
+                if (client == null) return;
+                client.execute(() -> {
+                    if (client.player != null) {
+                        client.player.sendMessage(
+                            Text.translatable("screenshottoclipboard.message.copied"),
+                            false);
+                    }
+                });
+            };
+            Runnable onFailure = () -> {
+                if (!ModConfig.getInstance().showMessage) return;
+                MinecraftClient client = MinecraftClient.getInstance();
+                if (client == null) return;
+                client.execute(() -> {
+                    if (client.player != null) {
+                        client.player.sendMessage(
+                            Text.translatable("screenshottoclipboard.message.failed"),
+                            false);
+                    }
+                });
+            };
+            if (pixels != null) {
+                ScreenshotClipboardService.INSTANCE.enqueuePixels(pixels, file, written, onSuccess, onFailure);
+            } else {
+                ScreenshotClipboardService.INSTANCE.enqueueFile(file, written, onSuccess, onFailure);
+            }
 
             LOGGER.debug("[ScreenshotToClipboard] Enqueued screenshot copy to clipboard: {}", file);
         } catch (Throwable t) {
@@ -77,4 +113,22 @@ public class ScreenshotRecorderMixin {
             }
         }
     }
+
+    @Inject(
+        method = "method_22691(Lnet/minecraft/client/texture/NativeImage;Ljava/io/File;Ljava/util/function/Consumer;)V",
+        at = @At("TAIL")
+    )
+    private static void stc$markScreenshotWritten(
+            NativeImage image,
+            File file,
+            Consumer<Text> messageReceiver,
+            CallbackInfo ci) {
+        CompletableFuture<Void> written = stc$written.get();
+        stc$written.remove();
+        // TAIL also runs when writeTo failed: vanilla logs the exception and carries on.
+        boolean complete = PngTee.finish();
+        if (written == null) return;
+        if (complete) written.complete(null);
+        else written.completeExceptionally(new IOException("Screenshot was not written completely: " + file));
+    }
 }
@@ -0,0 +1,252 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless burst load test for {@link ScreenshotClipboardService}: enqueues screenshots
+ * in bursts at a fixed rate against stub backends with injected latency and failures,
+ * then reports end-to-end latency percentiles (enqueue to callback), superseded (dropped)
+ * jobs, worker CPU utilization, allocation rate and GC time, followed by the pipeline's
+ * own {@code /sstoclip stats} lines.
+ *
+ * Run with {@code ./gradlew clipboardStress -PstressArgs="--mode=file --rate=60"}; options:
+ * <pre>
+ *   --bursts=5         number of bursts
+ *   --burstSize=20     screenshots per burst
+ *   --rate=30          screenshots per second within a burst
+ *   --gap=1000         pause between bursts (ms)
+ *   --mode=pixels      pixels (enqueuePixels) or file (enqueueFile)
+ *   --size=1920x1080   screenshot size
+ *   --latency=20       mean stub backend latency (ms)
+ *   --jitter=10        uniform +/- jitter on the latency (ms)
+ *   --failureRate=0    probability that a stub copy fails
+ *   --async=false      complete stub copies on a timer instead of blocking the worker
+ *   --payload=png      png (stub asks for the encoded PNG, like X11 / xclip) or none
+ *   --history=true     keep the screenshot history enabled
+ *   --seed=1           RNG seed for latency and failures
+ *   --broker=false     route jobs through the clipboard broker (clipboardBroker)
+ *   --serve=0          only host the clipboard broker for this many seconds, then print
+ *                      its stage stats; run a second harness with --broker to feed it
+ * </pre>
+ */
+public final class BurstStressHarness {
+
+    private final Map<String, String> options;
+    private final SplittableRandom random;
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private final LatencyHistogram burstTail = new LatencyHistogram();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private BurstStressHarness(Map<String, String> options) {
+        this.options = options;
+        this.random = new SplittableRandom(longOpt("seed", 1));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) throw new IllegalArgumentException("Unknown argument: " + arg);
+            int eq = arg.indexOf('=');
+            options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+        }
+        new BurstStressHarness(options).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        ModConfig config = ModConfig.inMemory();
+        if (!boolOpt("history", true)) config.historySize = 0;
+        config.clipboardBroker = boolOpt("broker", false) || longOpt("serve", 0) > 0;
+        ClipboardBackends.replaceAll(List.of(stubBackend()));
+        if (longOpt("serve", 0) > 0) {
+            serve(longOpt("serve", 0));
+            return;
+        }
+
+        int bursts = (int) longOpt("bursts", 5);
+        int burstSize = (int) longOpt("burstSize", 20);
+        long intervalNanos = (long) (1e9 / Double.parseDouble(opt("rate", "30")));
+        long gapMs = longOpt("gap", 1000);
+        boolean fileMode = opt("mode", "pixels").equals("file");
+        BufferedImage image = SyntheticScreenshots.create(opt("size", "1920x1080"));
+
+        Path dir = Files.createTempDirectory("stc-stress");
+        File file = dir.resolve("screenshot.png").toFile();
+        Files.write(file.toPath(), PngEncoder.encode(image, 1));
+        CompletableFuture<Void> written = CompletableFuture.completedFuture(null);
+
+        ScreenshotClipboardService service = ScreenshotClipboardService.INSTANCE;
+        Thread worker = findThread("screenshot-to-clipboard");
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        PipelineMetrics.reset();
+
+        long allocStart = threads.getTotalThreadAllocatedBytes();
+        long gcStart = gcMillis();
+        long cpuStart = worker != null ? threads.getThreadCpuTime(worker.threadId()) : -1;
+        long processCpuStart = processCpuNanos();
+        long start = System.nanoTime();
+
+        for (int b = 0; b < bursts; b++) {
+            CountDownLatch lastDone = new CountDownLatch(1);
+            long next = System.nanoTime();
+            for (int i = 0; i < burstSize; i++) {
+                LockSupport.parkNanos(next - System.nanoTime());
+                boolean last = i == burstSize - 1;
+                long enqueued = System.nanoTime();
+                Runnable onSuccess = () -> done(enqueued, true, last, lastDone);
+                Runnable onFailure = () -> done(enqueued, false, last, lastDone);
+                if (fileMode) {
+                    service.enqueueFile(file, written, onSuccess, onFailure);
+                } else {
+                    // A fresh snapshot per screenshot, as the mixin makes one per NativeImage.
+                    BufferedImage pixels = new BufferedImage(image.getColorModel(), image.copyData(null), false, null);
+                    service.enqueuePixels(pixels, file, written, onSuccess, onFailure);
+                }
+                next += intervalNanos;
+            }
+            if (!lastDone.await(30, TimeUnit.SECONDS)) System.out.println("burst " + (b + 1) + ": last job timed out");
+            if (b < bursts - 1) Thread.sleep(gapMs);
+        }
+
+        long wallNanos = System.nanoTime() - start;
+        long cpuNanos = worker != null ? threads.getThreadCpuTime(worker.threadId()) - cpuStart : -1;
+        long processCpu = processCpuNanos() - processCpuStart;
+        long allocated = threads.getTotalThreadAllocatedBytes() - allocStart;
+        long gc = gcMillis() - gcStart;
+        Files.deleteIfExists(file.toPath());
+        Files.deleteIfExists(dir);
+
+        long enqueued = (long) bursts * burstSize;
+        long completed = succeeded.get() + failed.get();
+        double seconds = wallNanos / 1e9;
+        System.out.println("options: " + options);
+        System.out.printf(Locale.ROOT, "jobs: %d enqueued, %d succeeded, %d failed, %d superseded (%.1f%%)%n",
+                enqueued, succeeded.get(), failed.get(), enqueued - completed,
+                100.0 * (enqueued - completed) / enqueued);
+        printLatency("end-to-end", endToEnd);
+        printLatency("burst tail", burstTail);
+        System.out.printf(Locale.ROOT, "worker CPU: %s, process CPU: %.1f%% over %.2f s wall%n",
+                cpuNanos < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f%%", 100.0 * cpuNanos / wallNanos),
+                100.0 * processCpu / wallNanos, seconds);
+        System.out.printf(Locale.ROOT, "allocation: %.1f MB/s (%.1f MB per job), GC %d ms%n",
+                allocated / 1e6 / seconds, allocated / 1e6 / enqueued, gc);
+        PipelineMetrics.summaryLines().forEach(System.out::println);
+    }
+
+    /** Hosts the broker so that other harness processes copy through this one's stub backend. */
+    private void serve(long seconds) throws InterruptedException {
+        if (ClipboardBroker.INSTANCE.isRemote()) {
+            System.out.println("another process already hosts the clipboard broker");
+            return;
+        }
+        PipelineMetrics.reset();
+        System.out.println("hosting the clipboard broker for " + seconds + " s");
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        ClipboardBroker.INSTANCE.stop();
+        System.out.println("options: " + options);
+        PipelineMetrics.summaryLines().forEach(System.out::println);
+    }
+
+    private void done(long enqueued, boolean ok, boolean last, CountDownLatch lastDone) {
+        long nanos = System.nanoTime() - enqueued;
+        (ok ? succeeded : failed).incrementAndGet();
+        endToEnd.recordNanos(nanos);
+        if (last) {
+            burstTail.recordNanos(nanos);
+            lastDone.countDown();
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Stub backend
+    // ------------------------------------------------------------------
+
+    private ClipboardBackend stubBackend() {
+        long latency = longOpt("latency", 20);
+        long jitter = longOpt("jitter", 10);
+        double failureRate = Double.parseDouble(opt("failureRate", "0"));
+        boolean png = opt("payload", "png").equals("png");
+        if (boolOpt("async", false)) {
+            return ClipboardBackend.async("stub", r -> 0, r -> {
+                if (png) r.png();
+                boolean ok = nextOk(failureRate);
+                Executor delay = CompletableFuture.delayedExecutor(nextDelay(latency, jitter), TimeUnit.MILLISECONDS);
+                return CompletableFuture.supplyAsync(() -> ok, delay);
+            });
+        }
+        return ClipboardBackend.of("stub", r -> 0, r -> {
+            if (png) r.png();
+            boolean ok = nextOk(failureRate);
+            Thread.sleep(nextDelay(latency, jitter));
+            return ok;
+        });
+    }
+
+    private synchronized long nextDelay(long latency, long jitter) {
+        return Math.max(0, latency + (jitter > 0 ? random.nextLong(-jitter, jitter + 1) : 0));
+    }
+
+    private synchronized boolean nextOk(double failureRate) {
+        return random.nextDouble() >= failureRate;
+    }
+
+    // ------------------------------------------------------------------
+    // Helpers
+    // ------------------------------------------------------------------
+
+    private static void printLatency(String name, LatencyHistogram h) {
+        System.out.printf(Locale.ROOT, "%s (ms): n=%d p50=%.1f p90=%.1f p99=%.1f max=%.1f%n", name, h.count(),
+                h.percentileMillis(50), h.percentileMillis(90), h.percentileMillis(99), h.maxMillis());
+    }
+
+    private static Thread findThread(String name) {
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals(name)) return t;
+        }
+        return null;
+    }
+
+    /** CPU time of the whole process, including the fork-join encoders (may exceed wall time). */
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private String opt(String name, String def) {
+        return options.getOrDefault(name, def);
+    }
+
+    private long longOpt(String name, long def) {
+        return Long.parseLong(opt(name, Long.toString(def)));
+    }
+
+    private boolean boolOpt(String name, boolean def) {
+        return Boolean.parseBoolean(opt(name, Boolean.toString(def)));
+    }
+}
@@ -0,0 +1,86 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of waiting for a screenshot file: checking an already complete PNG, and
+ * detecting completion of one that another thread writes in four chunks 5 ms apart
+ * (~15 ms of writing; anything above that is wait overhead).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FileWaitBenchmark {
+
+    private Path dir;
+    private Path complete;
+    private Path growing;
+    private byte[] png;
+    private Thread writer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("stc-jmh");
+        png = PngEncoder.encode(SyntheticScreenshots.create(1920, 1080), 1);
+        complete = Files.write(dir.resolve("complete.png"), png);
+        growing = dir.resolve("growing.png");
+    }
+
+    @Setup(Level.Invocation)
+    public void startWriter() throws IOException {
+        Files.deleteIfExists(growing);
+        writer = new Thread(() -> {
+            try (OutputStream out = Files.newOutputStream(growing)) {
+                int chunk = (png.length + 3) / 4;
+                for (int off = 0; off < png.length; off += chunk) {
+                    out.write(png, off, Math.min(chunk, png.length - off));
+                    out.flush();
+                    if (off + chunk < png.length) Thread.sleep(5);
+                }
+            } catch (IOException | InterruptedException ignored) {}
+        });
+        writer.start();
+    }
+
+    @TearDown(Level.Invocation)
+    public void joinWriter() throws InterruptedException {
+        writer.join();
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() throws IOException {
+        Files.deleteIfExists(complete);
+        Files.deleteIfExists(growing);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public boolean alreadyComplete() {
+        return PngFileWatcher.awaitWritten(complete, 2500);
+    }
+
+    @Benchmark
+    public boolean whileWriting() {
+        return PngFileWatcher.awaitWritten(growing, 2500);
+    }
+}
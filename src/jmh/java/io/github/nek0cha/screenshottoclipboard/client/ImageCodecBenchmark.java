@@ -0,0 +1,66 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-stage cost of the pixel pipeline: PNG decode (the old file path),
+ * CF_DIB conversion and the ImageIO PNG encoder baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g", "-Djava.awt.headless=true"})
+public class ImageCodecBenchmark {
+
+    @Param({"1920x1080", "3840x2160", "15360x8640"})
+    public String size;
+
+    private BufferedImage image;
+    private byte[] png;
+    private ByteBuffer dib;
+
+    @Setup
+    public void setup() {
+        image = SyntheticScreenshots.create(size);
+        png = PngEncoder.encode(image, 1);
+        dib = ByteBuffer.allocateDirect((int) DibEncoder.dibSize(image.getWidth(), image.getHeight()));
+    }
+
+    @Benchmark
+    public BufferedImage decodePng() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(png));
+    }
+
+    @Benchmark
+    public ByteBuffer encodeDib() {
+        DibEncoder.write(image, dib);
+        return dib;
+    }
+
+    @Benchmark
+    public byte[] encodePngImageIo() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(png.length);
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
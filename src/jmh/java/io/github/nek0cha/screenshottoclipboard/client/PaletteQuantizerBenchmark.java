@@ -0,0 +1,57 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Palette PNG wall time: quantize, map and encode at level 1 (compare with
+ * PngEncoderBenchmark.encode, level 1, for truecolor).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Djava.awt.headless=true"})
+public class PaletteQuantizerBenchmark {
+
+    @Param({"1920x1080", "3840x2160"})
+    public String size;
+
+    @Param({"64", "256"})
+    public int colors;
+
+    @Param({"false", "true"})
+    public boolean dither;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setup() {
+        image = SyntheticScreenshots.create(size);
+    }
+
+    @Benchmark
+    public PaletteQuantizer.Palette palette() {
+        return PaletteQuantizer.palette(image, colors);
+    }
+
+    @Benchmark
+    public byte[] encodePalettePng() {
+        PaletteQuantizer.Palette palette = PaletteQuantizer.palette(image, colors);
+        byte[] indices = PaletteQuantizer.map(image, palette, dither);
+        return PngEncoder.encodeIndexed(image.getWidth(), image.getHeight(), indices, palette.rgb(), 1);
+    }
+}
@@ -0,0 +1,113 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-frame cost of the {@link PixelKernels} conversions, scalar against vector, row by
+ * row as {@link RowReader} and {@link PngRowDecoder} call them ({@code abgr}: the whole-frame
+ * NativeImage swap of the screenshot snapshot). {@code vector*} falls back
+ * to the scalar kernel (and says so in setup) when the Vector API is unavailable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g", "-Djava.awt.headless=true", "--add-modules", "jdk.incubator.vector"})
+public class PixelKernelBenchmark {
+
+    @Param({"1920x1080", "3840x2160", "7680x4320"})
+    public String size;
+
+    /** {@code int}: TYPE_INT_RGB snapshot; {@code rgba}: decoded PNG row; {@code bgr}: TYPE_3BYTE_BGR; {@code abgr}: NativeImage. */
+    @Param({"int", "rgba", "bgr", "abgr"})
+    public String layout;
+
+    private int width;
+    private int height;
+    private int[] ints;
+    private byte[] bytes;
+    private int pixelStride;
+    private byte[] row;
+    private PixelKernels.IntKernel scalarInt;
+    private PixelKernels.IntKernel vectorInt;
+    private PixelKernels.ByteKernel scalarBytes;
+    private PixelKernels.ByteKernel vectorBytes;
+    private int[] swapped;
+    private PixelKernels.IntSwapKernel scalarSwap;
+    private PixelKernels.IntSwapKernel vectorSwap;
+
+    @Setup
+    public void setup() {
+        String[] wh = size.split("x");
+        width = Integer.parseInt(wh[0]);
+        height = Integer.parseInt(wh[1]);
+        row = new byte[width * 3];
+        SplittableRandom random = new SplittableRandom(1);
+        PixelKernels.Backend vector = PixelKernels.vector();
+        if (vector == null) System.out.println("Vector API unavailable, vector* runs the scalar kernels");
+        PixelKernels.Backend v = vector != null ? vector : PixelKernels.SCALAR;
+        switch (layout) {
+            case "int" -> {
+                ints = random.ints((long) width * height).toArray();
+                scalarInt = PixelKernels.SCALAR.packed(true);
+                vectorInt = v.packed(true);
+            }
+            case "abgr" -> {
+                ints = random.ints((long) width * height).toArray();
+                swapped = new int[ints.length];
+                scalarSwap = PixelKernels.SCALAR.abgrToArgb();
+                PixelKernels.IntSwapKernel k = v.abgrToArgb();
+                vectorSwap = k != null ? k : scalarSwap;
+            }
+            case "rgba", "bgr" -> {
+                int[] offsets = layout.equals("rgba") ? new int[] {4, 0, 1, 2} : new int[] {3, 2, 1, 0};
+                pixelStride = offsets[0];
+                bytes = new byte[width * height * pixelStride];
+                random.nextBytes(bytes);
+                scalarBytes = PixelKernels.SCALAR.interleaved(pixelStride, offsets[1], offsets[2], offsets[3], true);
+                PixelKernels.ByteKernel k = v.interleaved(pixelStride, offsets[1], offsets[2], offsets[3], true);
+                vectorBytes = k != null ? k : scalarBytes;
+            }
+            default -> throw new IllegalArgumentException(layout);
+        }
+    }
+
+    @Benchmark
+    public Object scalar() {
+        return convert(scalarInt, scalarBytes, scalarSwap);
+    }
+
+    @Benchmark
+    public Object vector() {
+        return convert(vectorInt, vectorBytes, vectorSwap);
+    }
+
+    private Object convert(PixelKernels.IntKernel intKernel, PixelKernels.ByteKernel byteKernel,
+                           PixelKernels.IntSwapKernel swapKernel) {
+        if (swapped != null) {
+            swapKernel.convert(ints, 0, swapped, 0, ints.length);
+            return swapped;
+        }
+        if (ints != null) {
+            for (int y = 0; y < height; y++) intKernel.convert(ints, y * width, row, 0, width);
+        } else {
+            int rowBytes = width * pixelStride;
+            for (int y = 0; y < height; y++) byteKernel.convert(bytes, y * rowBytes, row, 0, width);
+        }
+        return row;
+    }
+}
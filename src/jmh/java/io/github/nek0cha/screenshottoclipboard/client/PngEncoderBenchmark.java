@@ -0,0 +1,44 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/** {@link PngEncoder} wall time per compression level (compare with ImageCodecBenchmark.encodePngImageIo). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g", "-Djava.awt.headless=true"})
+public class PngEncoderBenchmark {
+
+    @Param({"1920x1080", "3840x2160", "15360x8640"})
+    public String size;
+
+    @Param({"0", "1", "6"})
+    public int level;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setup() {
+        image = SyntheticScreenshots.create(size);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return PngEncoder.encode(image, level);
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spawn + stdin pipe cost of the process backends ({@code wl-copy}, {@code xclip}),
+ * with {@code cat > /dev/null} standing in for the clipboard tool. Linux/macOS only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class ProcessPipeBenchmark {
+
+    private static final List<String> SINK = List.of("sh", "-c", "cat > /dev/null");
+
+    @Param({"1920x1080", "3840x2160"})
+    public String size;
+
+    private byte[] png;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        png = PngEncoder.encode(SyntheticScreenshots.create(size), 1);
+        file = Files.createTempFile("stc-jmh", ".png");
+        Files.write(file, png);
+    }
+
+    @TearDown
+    public void cleanup() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public boolean pipeFromMemory() {
+        return ClipboardUtil.runProcess(SINK, null, ByteBuffer.wrap(png), 5000);
+    }
+
+    @Benchmark
+    public boolean pipeFromFile() {
+        return ClipboardUtil.runProcess(SINK, file, null, 5000);
+    }
+}
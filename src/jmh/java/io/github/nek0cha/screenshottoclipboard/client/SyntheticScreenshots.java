@@ -0,0 +1,52 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic screenshot-like test images for the benchmarks: a sky gradient over
+ * 16x16 "block" tiles with a little per-pixel noise, so PNG compression ratios land
+ * in the same range as real game captures.
+ */
+final class SyntheticScreenshots {
+
+    private SyntheticScreenshots() {}
+
+    /** Parses {@code "WIDTHxHEIGHT"} as used by the {@code size} benchmark parameter. */
+    static BufferedImage create(String size) {
+        int x = size.indexOf('x');
+        return create(Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x + 1)));
+    }
+
+    static BufferedImage create(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] px = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        SplittableRandom rnd = new SplittableRandom(42);
+        int[] palette = new int[64];
+        for (int i = 0; i < palette.length; i++) palette[i] = rnd.nextInt(0x1000000);
+        int horizon = height * 2 / 5;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            if (y < horizon) {
+                int sky = 0x60 + (0x9F * y / Math.max(1, horizon));
+                int color = (sky / 2 << 16) | (sky * 3 / 4 << 8) | 0xFF;
+                for (int x = 0; x < width; x++) px[row + x] = color;
+                continue;
+            }
+            for (int x = 0; x < width; x++) {
+                int tile = palette[((x >> 4) * 31 + (y >> 4) * 17) & 63];
+                int noise = rnd.nextInt(16) - 8;
+                int r = clamp(((tile >> 16) & 0xFF) + noise);
+                int g = clamp(((tile >> 8) & 0xFF) + noise);
+                int b = clamp((tile & 0xFF) + noise);
+                px[row + x] = (r << 16) | (g << 8) | b;
+            }
+        }
+        return image;
+    }
+
+    private static int clamp(int v) {
+        return v < 0 ? 0 : Math.min(255, v);
+    }
+}
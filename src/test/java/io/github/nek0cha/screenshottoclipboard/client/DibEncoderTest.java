@@ -0,0 +1,103 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** {@link DibEncoder#write(BufferedImage, ByteBuffer)} against the old per-pixel {@code buildDib24}. */
+class DibEncoderTest {
+
+    private static final int[] TYPES = {
+            BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR};
+
+    @Test
+    void matchesPerPixelEncoderForOddWidths() {
+        // Widths 1-7 cover every row-padding remainder; 1025x1024 takes the parallel path.
+        int[][] sizes = {{1, 1}, {2, 3}, {3, 2}, {5, 7}, {7, 5}, {6, 4}, {33, 17}, {1025, 1024}};
+        for (int type : TYPES) {
+            for (int[] size : sizes) {
+                BufferedImage image = randomImage(size[0], size[1], type, 31L * size[0] + size[1]);
+                assertArrayEquals(buildDib24(image), encodeDirect(image),
+                        "type " + type + ", " + size[0] + "x" + size[1]);
+            }
+        }
+    }
+
+    @Test
+    void leavesNothingOfTheBufferUnwritten() {
+        BufferedImage image = randomImage(5, 3, BufferedImage.TYPE_INT_RGB, 7);
+        ByteBuffer dst = ByteBuffer.allocateDirect((int) DibEncoder.dibSize(5, 3) + 8);
+        fill(dst, (byte) 0x55);
+        DibEncoder.write(image, dst);
+        assertEquals(0, dst.position());
+        assertEquals((byte) 0x55, dst.get((int) DibEncoder.dibSize(5, 3)));
+        // Padding bytes at the end of each 15-byte row are zeroed, not left at 0x55.
+        for (int row = 0; row < 3; row++) {
+            assertEquals(0, dst.get(DibEncoder.HEADER_SIZE + row * 16 + 15));
+        }
+    }
+
+    /** Encodes into a plain native (direct) buffer, as with GlobalLock memory. */
+    private static byte[] encodeDirect(BufferedImage image) {
+        int size = (int) DibEncoder.dibSize(image.getWidth(), image.getHeight());
+        ByteBuffer dst = ByteBuffer.allocateDirect(size);
+        fill(dst, (byte) 0x55);
+        DibEncoder.write(image, dst);
+        byte[] out = new byte[size];
+        dst.get(0, out);
+        return out;
+    }
+
+    private static void fill(ByteBuffer buf, byte value) {
+        byte[] junk = new byte[buf.capacity()];
+        Arrays.fill(junk, value);
+        buf.put(0, junk);
+    }
+
+    private static BufferedImage randomImage(int width, int height, int type, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) image.setRGB(x, y, random.nextInt());
+        }
+        return image;
+    }
+
+    /** The pre-DibEncoder implementation ({@code ClipboardUtil.buildDib24} before it was replaced). */
+    private static byte[] buildDib24(BufferedImage image) {
+        int width  = image.getWidth();
+        int height = image.getHeight();
+        int rowSize   = ((width * 3 + 3) / 4) * 4;
+        int pixBytes  = rowSize * height;
+        ByteBuffer buf = ByteBuffer.allocate(40 + pixBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(40);
+        buf.putInt(width);
+        buf.putInt(height);
+        buf.putShort((short) 1);
+        buf.putShort((short) 24);
+        buf.putInt(0);
+        buf.putInt(pixBytes);
+        buf.putInt(0); buf.putInt(0); buf.putInt(0); buf.putInt(0);
+        int[] argb = new int[width * height];
+        image.getRGB(0, 0, width, height, argb, 0, width);
+        for (int y = height - 1; y >= 0; y--) {
+            int rowStart = buf.position();
+            for (int x = 0; x < width; x++) {
+                int px = argb[y * width + x];
+                buf.put((byte) (px & 0xFF));
+                buf.put((byte) ((px >> 8) & 0xFF));
+                buf.put((byte) ((px >> 16) & 0xFF));
+            }
+            int written = buf.position() - rowStart;
+            for (int p = written; p < rowSize; p++) buf.put((byte) 0);
+        }
+        return buf.array();
+    }
+}
@@ -0,0 +1,165 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trips of the striped {@link PngEncoder}: the hand-built zlib stream (primed dictionaries,
+ * sync-flushed stripes, FLG byte, combined Adler-32) must inflate strictly and decode to the input.
+ */
+class PngEncoderTest {
+
+    private static final int[] LEVELS = {0, 1, 6};
+    /** Odd widths; the large sizes hold well over two 256 KiB stripes of rows. */
+    private static final int[][] SIZES = {{1, 1}, {7, 5}, {33, 17}, {1001, 401}, {1501, 903}};
+
+    @Test
+    void truecolorDecodesToTheInput() throws IOException {
+        for (int[] size : SIZES) {
+            BufferedImage image = testImage(size[0], size[1], 31L * size[0] + size[1]);
+            int[] expected = argb(image);
+            for (int level : LEVELS) {
+                String what = size[0] + "x" + size[1] + " level " + level;
+                byte[] png = PngEncoder.encode(image, level);
+                assertTrue(size[1] < 400 || idatCount(png) > 3, what + ": expected several stripes");
+                inflateStrictly(png, (size[0] * 3 + 1) * size[1], what);
+                assertArrayEquals(expected, argb(ImageIO.read(new ByteArrayInputStream(png))), what + " (ImageIO)");
+                assertArrayEquals(expected, viaRowDecoder(png), what + " (PngRowDecoder)");
+            }
+        }
+    }
+
+    @Test
+    void pooledEncodingMatchesHeapEncoding() {
+        BufferedImage image = testImage(1001, 401, 5);
+        for (int level : LEVELS) {
+            try (BufferPool.Lease lease = PngEncoder.encodePooled(image, level)) {
+                assertArrayEquals(PngEncoder.encode(image, level), ClipboardUtil.toArray(lease.buffer()),
+                        "level " + level);
+            }
+        }
+    }
+
+    @Test
+    void indexedDecodesToThePalette() throws IOException {
+        // PngRowDecoder reads truecolor only, so the indexed path is checked through ImageIO.
+        int[] palette = new SplittableRandom(3).ints(256, 0, 1 << 24).toArray();
+        for (int[] size : SIZES) {
+            int width = size[0], height = size[1];
+            byte[] indices = new byte[width * height];
+            new SplittableRandom(width + 7L * height).nextBytes(indices);
+            for (int i = 0; i < indices.length / 2; i++) indices[i] = (byte) (i / width % 256);   // runs for the filters
+            int[] expected = new int[indices.length];
+            for (int i = 0; i < indices.length; i++) expected[i] = 0xFF000000 | palette[indices[i] & 0xFF];
+            for (int level : LEVELS) {
+                String what = width + "x" + height + " level " + level;
+                byte[] png = PngEncoder.encodeIndexed(width, height, indices, palette, level);
+                assertTrue(height < 900 || idatCount(png) > 3, what + ": expected several stripes");
+                inflateStrictly(png, (width + 1) * height, what);
+                assertArrayEquals(expected, argb(ImageIO.read(new ByteArrayInputStream(png))), what);
+            }
+        }
+    }
+
+    /** Random pixels above, smooth gradients below, so every filter type is chosen somewhere. */
+    private static BufferedImage testImage(int width, int height, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = y < height / 2 ? random.nextInt() : (x * 7 & 0xFF) << 16 | (y * 3 & 0xFF) << 8 | (x + y & 0xFF);
+                image.setRGB(x, y, rgb);
+            }
+        }
+        return image;
+    }
+
+    private static int[] argb(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    private static int[] viaRowDecoder(byte[] png) throws IOException {
+        Path file = Files.createTempFile("screenshottoclipboard-test-", ".png");
+        try {
+            Files.write(file, png);
+            try (PngRowDecoder decoder = PngRowDecoder.open(file)) {
+                int width = decoder.width();
+                int[] out = new int[width * decoder.height()];
+                byte[] row = new byte[width * 3];
+                for (int y = 0; y < decoder.height(); y++) {
+                    decoder.readRow(row, 0, false);
+                    for (int x = 0; x < width; x++) {
+                        out[y * width + x] = 0xFF000000 | (row[3 * x] & 0xFF) << 16
+                                | (row[3 * x + 1] & 0xFF) << 8 | row[3 * x + 2] & 0xFF;
+                    }
+                }
+                return out;
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Inflates the concatenated IDAT data to its end: {@link Inflater} checks the zlib header and
+     * the Adler-32 trailer, which decoders that stop after the last row never look at.
+     */
+    private static void inflateStrictly(byte[] png, int rawBytes, String what) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(idat(png));
+            byte[] out = new byte[rawBytes + 1];
+            int n = 0;
+            while (!inflater.finished() && n < out.length) {
+                int got = inflater.inflate(out, n, out.length - n);
+                if (got == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += got;
+            }
+            assertTrue(inflater.finished(), what + ": zlib stream does not end");
+            assertEquals(rawBytes, n, what + ": inflated size");
+            assertEquals(0, inflater.getRemaining(), what + ": bytes after the zlib stream");
+        } catch (DataFormatException e) {
+            throw new AssertionError(what + ": " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] idat(byte[] png) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buf = ByteBuffer.wrap(png, 8, png.length - 8);
+        while (buf.remaining() >= 12) {
+            int length = buf.getInt();
+            int type = buf.getInt();
+            if (type == 0x49444154) out.write(png, buf.position(), length);
+            buf.position(buf.position() + length + 4);
+        }
+        return out.toByteArray();
+    }
+
+    private static int idatCount(byte[] png) {
+        int count = 0;
+        ByteBuffer buf = ByteBuffer.wrap(png, 8, png.length - 8);
+        while (buf.remaining() >= 12) {
+            int length = buf.getInt();
+            if (buf.getInt() == 0x49444154) count++;
+            buf.position(buf.position() + length + 4);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/** {@code VectorPixelKernels} against {@link PixelKernels#SCALAR}, byte for byte, including the bytes it must not touch. */
+class VectorPixelKernelsTest {
+
+    // Lengths around the common lane counts (16/32/64) plus a few odd tails and one long run.
+    private static final int[] LENGTHS = {0, 1, 2, 3, 5, 15, 16, 17, 31, 32, 33, 63, 64, 65, 100, 129, 1000};
+    private static final int[] OFFSETS = {0, 1, 2, 3, 7};
+
+    /** {pixelStride, rOff, gOff, bOff}: RGBA, BGR, ABGR, BGRA, ARGB, RGB. */
+    private static final int[][] LAYOUTS = {
+            {4, 0, 1, 2}, {3, 2, 1, 0}, {4, 3, 2, 1}, {4, 2, 1, 0}, {4, 1, 2, 3}, {3, 0, 1, 2}};
+
+    @Test
+    void packedMatchesScalar() {
+        PixelKernels.Backend vector = PixelKernels.vector();
+        assumeTrue(vector != null, "jdk.incubator.vector not available");
+        SplittableRandom random = new SplittableRandom(1);
+        for (boolean bgr : new boolean[]{false, true}) {
+            PixelKernels.IntKernel expected = PixelKernels.SCALAR.packed(bgr);
+            PixelKernels.IntKernel actual = vector.packed(bgr);
+            if (actual == null) continue;
+            for (int pixels : LENGTHS) {
+                for (int srcOff : OFFSETS) {
+                    for (int dstOff : OFFSETS) {
+                        int[] src = random.ints(srcOff + pixels + 5).toArray();
+                        byte[] want = junk(dstOff + 3 * pixels + 5, random.nextLong());
+                        byte[] got = want.clone();
+                        expected.convert(src, srcOff, want, dstOff, pixels);
+                        actual.convert(src, srcOff, got, dstOff, pixels);
+                        assertArrayEquals(want, got, "packed bgr=" + bgr + " pixels=" + pixels
+                                + " srcOff=" + srcOff + " dstOff=" + dstOff);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void interleavedMatchesScalar() {
+        PixelKernels.Backend vector = PixelKernels.vector();
+        assumeTrue(vector != null, "jdk.incubator.vector not available");
+        SplittableRandom random = new SplittableRandom(2);
+        for (int[] layout : LAYOUTS) {
+            int stride = layout[0];
+            for (boolean bgr : new boolean[]{false, true}) {
+                PixelKernels.ByteKernel expected =
+                        PixelKernels.SCALAR.interleaved(stride, layout[1], layout[2], layout[3], bgr);
+                PixelKernels.ByteKernel actual = vector.interleaved(stride, layout[1], layout[2], layout[3], bgr);
+                if (actual == null) continue;
+                for (int pixels : LENGTHS) {
+                    for (int srcOff : OFFSETS) {
+                        for (int dstOff : OFFSETS) {
+                            byte[] src = junk(srcOff + stride * pixels + 5, random.nextLong());
+                            byte[] want = junk(dstOff + 3 * pixels + 5, random.nextLong());
+                            byte[] got = want.clone();
+                            expected.convert(src, srcOff, want, dstOff, pixels);
+                            actual.convert(src, srcOff, got, dstOff, pixels);
+                            assertArrayEquals(want, got, "stride=" + stride + " r/g/b=" + layout[1] + "/"
+                                    + layout[2] + "/" + layout[3] + " bgr=" + bgr + " pixels=" + pixels
+                                    + " srcOff=" + srcOff + " dstOff=" + dstOff);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void scalarSwapMovesRedAndBlue() {
+        int[] px = {0x80332211, 0x00FFEEDD};
+        PixelKernels.SCALAR.abgrToArgb().convert(px, 0, px, 0, px.length);
+        assertArrayEquals(new int[] {0x80112233, 0x00DDEEFF}, px);
+    }
+
+    @Test
+    void abgrSwapMatchesScalar() {
+        PixelKernels.Backend vector = PixelKernels.vector();
+        assumeTrue(vector != null, "jdk.incubator.vector not available");
+        PixelKernels.IntSwapKernel actual = vector.abgrToArgb();
+        assumeTrue(actual != null, "no vector swap kernel on this CPU");
+        PixelKernels.IntSwapKernel expected = PixelKernels.SCALAR.abgrToArgb();
+        SplittableRandom random = new SplittableRandom(3);
+        for (int pixels : LENGTHS) {
+            for (int srcOff : OFFSETS) {
+                for (int dstOff : OFFSETS) {
+                    int[] src = random.ints(srcOff + pixels + 5).toArray();
+                    int[] want = random.ints(dstOff + pixels + 5).toArray();
+                    int[] got = want.clone();
+                    expected.convert(src, srcOff, want, dstOff, pixels);
+                    actual.convert(src, srcOff, got, dstOff, pixels);
+                    assertArrayEquals(want, got, "swap pixels=" + pixels + " srcOff=" + srcOff + " dstOff=" + dstOff);
+                }
+            }
+            // In place, as the screenshot snapshot runs it.
+            int[] want = random.ints(pixels + 3).toArray();
+            int[] got = want.clone();
+            expected.convert(want, 3, want, 3, pixels);
+            actual.convert(got, 3, got, 3, pixels);
+            assertArrayEquals(want, got, "in-place swap pixels=" + pixels);
+        }
+    }
+
+    private static byte[] junk(int length, long seed) {
+        byte[] out = new byte[length];
+        new SplittableRandom(seed).nextBytes(out);
+        return out;
+    }
+}
@@ -0,0 +1,188 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.platform.unix.X11;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Reads what {@link X11ClipboardOwner} serves back with {@code xclip -o}, and drives INCR
+ * requestors that die or stall mid-transfer directly through Xlib. A requestor dying between
+ * chunks makes the owner's next write fail asynchronously, which would exit the JVM under
+ * Xlib's default error handler.
+ * Needs an X server and xclip; on CI run {@code xvfb-run ./gradlew test}. Skipped otherwise.
+ */
+class X11ClipboardOwnerTest {
+
+    @Test
+    void servesSmallPayloadInOneProperty() throws Exception {
+        roundTrip(1000);
+    }
+
+    @Test
+    void servesLargePayloadOverIncr() throws Exception {
+        // Larger than any server's maximum request, so it goes out in INCR chunks.
+        roundTrip(40 * 1024 * 1024 + 13);
+    }
+
+    @Test
+    void releasesIncrTransferWhenRequestorWindowIsDestroyed() throws Exception {
+        X11ClipboardOwner owner = owner();
+        try (BufferPool.Lease png = randomLease(40 * 1024 * 1024)) {
+            assertTrue(owner.publish(png));
+            X11 x = X11.INSTANCE;
+            X11.Display display = x.XOpenDisplay(null);
+            try {
+                X11.Window window = startIncr(display);
+                assertEquals(1, owner.activeTransfers());
+                x.XDestroyWindow(display, window);
+                x.XSync(display, false);
+                waitFor(() -> owner.activeTransfers() == 0, "INCR transfer to be released");
+            } finally {
+                x.XCloseDisplay(display);
+            }
+        }
+    }
+
+    @Test
+    void survivesRequestorDestroyedBetweenIncrChunks() throws Exception {
+        X11ClipboardOwner owner = owner();
+        try (BufferPool.Lease png = randomLease(40 * 1024 * 1024)) {
+            assertTrue(owner.publish(png));
+            X11 x = X11.INSTANCE;
+            X11.Display display = x.XOpenDisplay(null);
+            try {
+                X11.Window window = startIncr(display);
+                X11.Atom property = x.XInternAtom(display, "STC_TEST", false);
+                // Take the first chunk like a real requestor.
+                x.XDeleteProperty(display, window, property);
+                x.XFlush(display);
+                X11.XEvent event = new X11.XEvent();
+                X11.XPropertyEvent notify;
+                do {
+                    x.XNextEvent(display, event);
+                    notify = event.type == X11.PropertyNotify
+                            ? (X11.XPropertyEvent) event.getTypedValue(X11.XPropertyEvent.class) : null;
+                } while (notify == null || notify.state != X11.PropertyNewValue);
+                // Ask for the second one and vanish in the same batch: the owner writes the chunk
+                // to a dead window, and the BadWindow comes back asynchronously.
+                x.XDeleteProperty(display, window, property);
+                x.XDestroyWindow(display, window);
+                x.XSync(display, false);
+                waitFor(() -> owner.activeTransfers() == 0, "INCR transfer to be released");
+                // Still alive, and the event thread still answers.
+                assertTrue(owner.publish(png));
+            } finally {
+                x.XCloseDisplay(display);
+            }
+        }
+    }
+
+    @Test
+    void abandonsIncrTransferWhenRequestorStopsReading() throws Exception {
+        X11ClipboardOwner owner = owner();
+        try (BufferPool.Lease png = randomLease(40 * 1024 * 1024)) {
+            assertTrue(owner.publish(png));
+            X11 x = X11.INSTANCE;
+            X11.Display display = x.XOpenDisplay(null);
+            try {
+                // The window stays alive but never deletes the property to ask for a chunk.
+                startIncr(display);
+                assertEquals(1, owner.activeTransfers());
+                waitFor(() -> owner.activeTransfers() == 0, "INCR transfer to time out");
+            } finally {
+                x.XCloseDisplay(display);
+            }
+        }
+    }
+
+    private interface XlibConvert extends Library {
+        XlibConvert INSTANCE = Native.load("X11", XlibConvert.class);
+        int XConvertSelection(X11.Display display, X11.Atom selection, X11.Atom target,
+                              X11.Atom property, X11.Window requestor, NativeLong time);
+    }
+
+    /** Asks for image/png from a fresh window and returns once the owner has announced INCR. */
+    private static X11.Window startIncr(X11.Display display) {
+        X11 x = X11.INSTANCE;
+        X11.Window window = x.XCreateSimpleWindow(display, x.XDefaultRootWindow(display), 0, 0, 1, 1, 0, 0, 0);
+        x.XSelectInput(display, window, new NativeLong(X11.PropertyChangeMask));
+        X11.Atom property = x.XInternAtom(display, "STC_TEST", false);
+        XlibConvert.INSTANCE.XConvertSelection(display, x.XInternAtom(display, "CLIPBOARD", false),
+                x.XInternAtom(display, "image/png", false), property, window, new NativeLong(X11.CurrentTime));
+        X11.XEvent event = new X11.XEvent();
+        do {
+            x.XNextEvent(display, event);
+        } while (event.type != X11.SelectionNotify);
+        X11.XSelectionEvent reply = (X11.XSelectionEvent) event.getTypedValue(X11.XSelectionEvent.class);
+        assertEquals(property.longValue(), reply.property.longValue());
+        return window;
+    }
+
+    private static void roundTrip(int size) throws Exception {
+        X11ClipboardOwner owner = owner();
+        assumeTrue(onPath("xclip"), "xclip not installed");
+        try (BufferPool.Lease png = randomLease(size)) {
+            assertTrue(owner.publish(png));
+            byte[] expected = new byte[size];
+            png.buffer().get(0, expected);
+            Process xclip = new ProcessBuilder("xclip", "-selection", "clipboard", "-t", "image/png", "-o")
+                    .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+            byte[] actual = xclip.getInputStream().readAllBytes();
+            assertTrue(xclip.waitFor(10, TimeUnit.SECONDS));
+            assertEquals(0, xclip.exitValue());
+            assertArrayEquals(expected, actual);
+            assertTrue(owner.isServing(png));
+            assertEquals(0, owner.activeTransfers());
+        }
+    }
+
+    private static X11ClipboardOwner owner() {
+        String display = System.getenv("DISPLAY");
+        assumeTrue(display != null && !display.isBlank(), "no X display");
+        X11ClipboardOwner owner = X11ClipboardOwner.get();
+        assertNotNull(owner);
+        return owner;
+    }
+
+    private static BufferPool.Lease randomLease(int size) {
+        BufferPool.Lease lease = BufferPool.INSTANCE.acquire(size);
+        byte[] bytes = new byte[size];
+        new SplittableRandom(size).nextBytes(bytes);
+        lease.buffer().put(0, bytes);
+        return lease;
+    }
+
+    private static boolean onPath(String command) {
+        String path = System.getenv("PATH");
+        if (path == null) return false;
+        for (String dir : path.split(File.pathSeparator)) {
+            if (new File(dir, command).canExecute()) return true;
+        }
+        return false;
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    private static void waitFor(Condition condition, String what) throws InterruptedException, IOException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.holds()) {
+            if (System.nanoTime() > deadline) throw new IOException("Timed out waiting for " + what);
+            Thread.sleep(20);
+        }
+    }
+}
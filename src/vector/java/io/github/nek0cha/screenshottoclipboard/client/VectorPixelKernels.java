@@ -0,0 +1,104 @@
+package io.github.nek0cha.screenshottoclipboard.client;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link PixelKernels} on the incubating Vector API. Only loaded (reflectively) when
+ * {@code jdk.incubator.vector} is in the boot layer.
+ *
+ * Each step loads one register of source pixels, gathers their colour bytes to the front
+ * with a single shuffle and stores the whole register; the bytes past the converted pixels
+ * are overwritten by the next step. The loop stops while a full store still ends inside
+ * the output run, and the scalar kernel finishes the last few pixels, so nothing outside
+ * {@code dst[dstOff, dstOff + 3 * pixels)} is ever written. {@link #abgrToArgb()} maps ints to
+ * ints, so it swaps whole registers in place and leaves only the remainder to the scalar kernel.
+ */
+final class VectorPixelKernels implements PixelKernels.Backend {
+
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    /** Same shape as {@link #BYTES}, so an int load reinterprets as one byte register. */
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final int LANES = BYTES.length();
+    /** Narrower registers (or none) are not worth a shuffle per handful of pixels. */
+    private static final int MIN_LANES = 16;
+
+    @Override
+    public String name() {
+        return "vector (" + BYTES.vectorBitSize() + "-bit)";
+    }
+
+    @Override
+    public PixelKernels.IntKernel packed(boolean bgr) {
+        if (LANES < MIN_LANES || INTS.vectorBitSize() != BYTES.vectorBitSize()) return null;
+        // Lanes are reinterpreted little-endian: 0x??RRGGBB is B, G, R, ?.
+        VectorShuffle<Byte> gather = gather(4, 2, 1, 0, bgr);
+        int step = LANES / 4;
+        PixelKernels.IntKernel tail = PixelKernels.SCALAR.packed(bgr);
+        return (src, srcOff, dst, dstOff, pixels) -> {
+            int x = 0;
+            for (int limit = pixels - (LANES + 2) / 3; x <= limit; x += step) {
+                IntVector.fromArray(INTS, src, srcOff + x)
+                        .reinterpretAsBytes()
+                        .rearrange(gather)
+                        .intoArray(dst, dstOff + 3 * x);
+            }
+            if (x < pixels) tail.convert(src, srcOff + x, dst, dstOff + 3 * x, pixels - x);
+        };
+    }
+
+    @Override
+    public PixelKernels.ByteKernel interleaved(int pixelStride, int rOff, int gOff, int bOff, boolean bgr) {
+        if (LANES < MIN_LANES || (pixelStride != 3 && pixelStride != 4)) return null;
+        int first = bgr ? bOff : rOff, last = bgr ? rOff : bOff;
+        if (pixelStride == 3 && first == 0 && gOff == 1 && last == 2) return null;   // a plain copy
+        VectorShuffle<Byte> gather = gather(pixelStride, rOff, gOff, bOff, bgr);
+        int step = LANES / pixelStride;
+        PixelKernels.ByteKernel tail = PixelKernels.SCALAR.interleaved(pixelStride, rOff, gOff, bOff, bgr);
+        return (src, srcOff, dst, dstOff, pixels) -> {
+            int x = 0;
+            // 3 * x + LANES <= 3 * pixels also keeps the (pixelStride >= 3) source load inside the run.
+            for (int limit = pixels - (LANES + 2) / 3; x <= limit; x += step) {
+                ByteVector.fromArray(BYTES, src, srcOff + pixelStride * x)
+                        .rearrange(gather)
+                        .intoArray(dst, dstOff + 3 * x);
+            }
+            if (x < pixels) tail.convert(src, srcOff + pixelStride * x, dst, dstOff + 3 * x, pixels - x);
+        };
+    }
+
+    @Override
+    public PixelKernels.IntSwapKernel abgrToArgb() {
+        if (LANES < MIN_LANES || INTS.vectorBitSize() != BYTES.vectorBitSize()) return null;
+        // Little-endian lanes: 0xAABBGGRR is R, G, B, A; swap R and B within every int.
+        int[] order = {2, 1, 0, 3};
+        int[] index = new int[LANES];
+        for (int i = 0; i < LANES; i++) index[i] = i / 4 * 4 + order[i % 4];
+        VectorShuffle<Byte> swap = VectorShuffle.fromArray(BYTES, index, 0);
+        int step = INTS.length();
+        PixelKernels.IntSwapKernel tail = PixelKernels.SCALAR.abgrToArgb();
+        return (src, srcOff, dst, dstOff, pixels) -> {
+            int x = 0;
+            for (int limit = INTS.loopBound(pixels); x < limit; x += step) {
+                IntVector.fromArray(INTS, src, srcOff + x)
+                        .reinterpretAsBytes()
+                        .rearrange(swap)
+                        .reinterpretAsInts()
+                        .intoArray(dst, dstOff + x);
+            }
+            if (x < pixels) tail.convert(src, srcOff + x, dst, dstOff + x, pixels - x);
+        };
+    }
+
+    /** Shuffle that moves the colour bytes of every whole pixel in a register to packed triplets. */
+    private static VectorShuffle<Byte> gather(int pixelStride, int rOff, int gOff, int bOff, boolean bgr) {
+        int[] order = bgr ? new int[] {bOff, gOff, rOff} : new int[] {rOff, gOff, bOff};
+        int[] index = new int[LANES];
+        for (int i = 0, n = LANES / pixelStride * 3; i < n; i++) {
+            index[i] = i / 3 * pixelStride + order[i % 3];
+        }
+        return VectorShuffle.fromArray(BYTES, index, 0);
+    }
+}